@@ -0,0 +1,50 @@
+package rainlang;
+
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+// Variable lookup through nested scopes, each miss walks one enclosing environment further
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnvironmentBench {
+	@Param({"0", "1", "4", "16"})
+	public int depth;
+
+	private Environment innermost;
+	private final Token name = Harness.identifier("x");
+	private final Token local = Harness.identifier("local");
+
+	@Setup
+	public void setup() {
+		Environment globals = new Environment();
+		globals.define("x", new NumericValue(Type.val(), 1));
+		// A few other names per scope, as a function body would have
+		for (int i = 0; i < 4; i++) globals.define("g" + i, null);
+		innermost = globals;
+		for (int d = 0; d < depth; d++) {
+			innermost = new Environment(innermost);
+			for (int i = 0; i < 4; i++) innermost.define("v" + i, null);
+		}
+		innermost.define("local", new NumericValue(Type.val(), 2));
+	}
+
+	// x is defined 'depth' scopes out
+	@Benchmark
+	public Object getOuter() {
+		return innermost.get(name);
+	}
+
+	@Benchmark
+	public Object getLocal() {
+		return innermost.get(local);
+	}
+
+	@Benchmark
+	public void assignOuter() {
+		innermost.assign(name, innermost.get(local));
+	}
+}
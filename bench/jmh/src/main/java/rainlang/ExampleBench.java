@@ -0,0 +1,50 @@
+package rainlang;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+// Whole example scripts: scanning, parsing, analysis, simulation and the implicit report.
+// Every invocation starts from a fresh interpreter with the standard library already loaded.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExampleBench {
+	@Param({"basic", "dam", "molonglo"})
+	public String example;
+
+	private String source;
+	private Path output;
+	private Harness harness;
+
+	@Setup(Level.Trial)
+	public void load() throws IOException {
+		source = Harness.resource("examples/" + example + ".txt");
+		output = Files.createTempFile("rainlang-bench", ".txt");
+	}
+
+	@Setup(Level.Invocation)
+	public void fresh() throws IOException {
+		harness = new Harness(output);
+	}
+
+	@TearDown(Level.Invocation)
+	public void close() throws IOException {
+		harness.interpreter.output.close();
+	}
+
+	@TearDown(Level.Trial)
+	public void delete() throws IOException {
+		Files.deleteIfExists(output);
+	}
+
+	@Benchmark
+	public void run() {
+		harness.run(source);
+		harness.run("hydrology_report_implicit();");
+	}
+}
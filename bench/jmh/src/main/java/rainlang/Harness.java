@@ -0,0 +1,66 @@
+package rainlang;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+
+// A fresh engine with the standard library loaded, for benchmarks to run and evaluate code in
+final class Harness {
+	private final RainEngine engine = new RainEngine();
+	final Interpreter interpreter = engine.interpreter();
+
+	Harness() {
+		engine.loadStdlib();
+		check();
+	}
+
+	// Script output goes to a file rather than the terminal JMH reports to
+	Harness(Path output) throws IOException {
+		this();
+		interpreter.setOutput(OutputSink.file(output));
+	}
+
+	void run(String source) {
+		List<Stmt> program = compile(source);
+		engine.execute(program, "benchmark");
+		check();
+	}
+
+	// A single analysed expression, to evaluate with expr.accept(interpreter)
+	Expr expression(String source) {
+		List<Stmt> program = compile(source + ";");
+		if (program.size() != 1 || !(program.get(0) instanceof Stmt.Expression stmt)) {
+			throw new IllegalArgumentException("Not a single expression: " + source);
+		}
+		return stmt.expression;
+	}
+
+	Object global(String name) {
+		return interpreter.globals.getLocal(name);
+	}
+
+	static Token identifier(String name) {
+		return new Token(TokenType.IDENTIFIER, name, null, 1, 1);
+	}
+
+	static String resource(String name) {
+		try (InputStream in = Harness.class.getResourceAsStream(name)) {
+			if (in == null) throw new IllegalStateException(name + " is not on the class path");
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private List<Stmt> compile(String source) {
+		List<Stmt> program = engine.compile(source, "benchmark");
+		check();
+		return program;
+	}
+
+	private void check() {
+		interpreter.output.flush();
+		if (engine.errorCount() > 0) throw new IllegalStateException("Benchmark source failed, see the errors above");
+	}
+}
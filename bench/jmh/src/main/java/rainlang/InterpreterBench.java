@@ -0,0 +1,148 @@
+package rainlang;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+// Interpreter hot paths, each evaluating one analysed expression or calling the runtime directly
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBench {
+	private static final String SETUP = """
+		Val[] xs = [];
+		for (Val i = 0; i < 1000; i = i + 1) xs.push(i);
+		Val[] ys = [];
+		class Point {
+			Val x;
+			Val y;
+			Point(Val x, Val y) {
+				this.x = x;
+				this.y = y;
+			}
+		}
+		Point p = Point(1, 2);
+		Val once(Val x) { return x; }
+		Val twice(Val x) { return x + x; }
+		Volume twice(Volume x) { return x + x; }
+		Area twice(Area x) { return x + x; }
+		""";
+
+	private Harness harness;
+	private Interpreter interpreter;
+
+	private Expr addVals;
+	private Expr addVolumes;
+	private Expr scaleVolume;
+	private Expr areaTimesRain;
+	private Expr compareVolumes;
+	private Expr index;
+	private Expr push;
+	private Expr pop;
+	private Expr callSingle;
+	private Expr callOverloaded;
+	private Expr construct;
+
+	private RainInstance point;
+	private RainClass pointClass;
+	private final Token x = Harness.identifier("x");
+	private final Token paren = Harness.identifier("(");
+	private List<Object> pointArgs;
+	private Object one;
+
+	@Setup
+	public void setup() {
+		harness = new Harness();
+		interpreter = harness.interpreter;
+		harness.run(SETUP);
+
+		addVals = harness.expression("1 + 2");
+		addVolumes = harness.expression("10ML + 5ML");
+		scaleVolume = harness.expression("10ML * 2");
+		areaTimesRain = harness.expression("5km2 * 10mm");
+		compareVolumes = harness.expression("10ML < 5ML");
+		index = harness.expression("xs[500]");
+		push = harness.expression("ys.push(1)");
+		pop = harness.expression("ys.pop()");
+		callSingle = harness.expression("once(2)");
+		callOverloaded = harness.expression("twice(2ML)");
+		construct = harness.expression("Point(1, 2)");
+
+		point = (RainInstance) harness.global("p");
+		pointClass = (RainClass) harness.global("Point");
+		one = new NumericValue(Type.val(), 1);
+		pointArgs = List.of(one, new NumericValue(Type.val(), 2));
+	}
+
+	@Benchmark
+	public Object binaryVal() {
+		return addVals.accept(interpreter);
+	}
+
+	@Benchmark
+	public Object binaryVolumeAdd() {
+		return addVolumes.accept(interpreter);
+	}
+
+	@Benchmark
+	public Object binaryVolumeScale() {
+		return scaleVolume.accept(interpreter);
+	}
+
+	@Benchmark
+	public Object binaryAreaTimesRain() {
+		return areaTimesRain.accept(interpreter);
+	}
+
+	@Benchmark
+	public Object binaryVolumeCompare() {
+		return compareVolumes.accept(interpreter);
+	}
+
+	@Benchmark
+	public Object instanceGet() {
+		return point.get(x);
+	}
+
+	@Benchmark
+	public void instanceSet() {
+		point.set(x, one);
+	}
+
+	@Benchmark
+	public Object arrayIndex() {
+		return index.accept(interpreter);
+	}
+
+	// A pop after every push keeps the array from growing
+	@Benchmark
+	public Object arrayPushPop() {
+		push.accept(interpreter);
+		return pop.accept(interpreter);
+	}
+
+	@Benchmark
+	public Object callSingle() {
+		return callSingle.accept(interpreter);
+	}
+
+	// Resolved to one of three overloads through CallResolution
+	@Benchmark
+	public Object callOverloaded() {
+		return callOverloaded.accept(interpreter);
+	}
+
+	@Benchmark
+	public Object classCall() {
+		return pointClass.call(interpreter, paren, pointArgs);
+	}
+
+	// The same through a call expression, as a script does it
+	@Benchmark
+	public Object classConstruct() {
+		return construct.accept(interpreter);
+	}
+}
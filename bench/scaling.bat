@@ -0,0 +1,6 @@
+@echo off
+rem Scaling benchmark, run build.bat first. JVM options go in JAVA_OPTS, e.g. set JAVA_OPTS=-Xmx8g
+cd /d "%~dp0.."
+javac -cp build -d build\bench bench\scaling\*.java
+if errorlevel 1 exit /b 1
+java %JAVA_OPTS% -cp build;build\bench ScalingBench %*
@@ -0,0 +1,6 @@
+#!/bin/bash
+# Scaling benchmark, run build.sh first. JVM options go in JAVA_OPTS, e.g. JAVA_OPTS=-Xmx8g
+set -e
+cd "$(dirname "$0")/.."
+javac -cp build -d build/bench bench/scaling/*.java
+java $JAVA_OPTS -cp build:build/bench ScalingBench "$@"
@@ -0,0 +1,142 @@
+import java.util.*;
+import java.util.function.*;
+
+// A synthetic river network held as arrays, rendered to RainLang statements on demand.
+// Bodies are numbered outlet first: down[i] is the body i drains into, always < i, or -1 at an outlet.
+final class Network {
+	enum Shape {
+		// One long river
+		CHAIN,
+		// Every confluence joins exactly two rivers
+		TREE,
+		// Random growth: channels mostly lengthen at their tips and now and then gain a tributary
+		DENDRITIC,
+		// Many small dendritic catchments, none connected to another
+		CATCHMENTS
+	}
+
+	// Bodies per catchment for CATCHMENTS
+	private static final int CATCHMENT_SIZE = 100;
+	// Chance that a DENDRITIC body extends an existing tip rather than starting a tributary
+	private static final double EXTEND = 0.7;
+	// One dam per this many bodies
+	private static final int DAM_EVERY = 500;
+
+	final Shape shape;
+	final int size;
+	final int[] down;
+	// Number of bodies draining into each body, 0 for a headwater
+	final int[] upstream;
+	private final long seed;
+
+	private Network(Shape shape, int size, int[] down, long seed) {
+		this.shape = shape;
+		this.size = size;
+		this.down = down;
+		this.seed = seed;
+		this.upstream = new int[size];
+		for (int d : down) if (d >= 0) upstream[d]++;
+	}
+
+	static Network generate(Shape shape, int size, long seed) {
+		if (size < 1) throw new IllegalArgumentException("A network needs at least one body");
+		Random random = new Random(seed);
+		int[] down = new int[size];
+		switch (shape) {
+			case CHAIN -> {
+				for (int i = 0; i < size; i++) down[i] = i - 1;
+			}
+			case TREE -> {
+				for (int i = 0; i < size; i++) down[i] = i == 0 ? -1 : (i - 1) / 2;
+			}
+			case DENDRITIC -> grow(down, 0, size, random);
+			case CATCHMENTS -> {
+				for (int base = 0; base < size; base += CATCHMENT_SIZE) {
+					grow(down, base, Math.min(base + CATCHMENT_SIZE, size), random);
+				}
+			}
+		}
+		return new Network(shape, size, down, seed);
+	}
+
+	// One dendritic catchment over bodies from .. to - 1, with its outlet at from
+	private static void grow(int[] down, int from, int to, Random random) {
+		down[from] = -1;
+		// Bodies nothing drains into yet, a tip is swapped out when it is extended
+		int[] tips = new int[to - from];
+		int count = 0;
+		tips[count++] = from;
+		for (int i = from + 1; i < to; i++) {
+			if (random.nextDouble() < EXTEND) {
+				int t = random.nextInt(count);
+				down[i] = tips[t];
+				tips[t] = i;
+			} else {
+				down[i] = from + random.nextInt(i - from);
+				tips[count++] = i;
+			}
+		}
+	}
+
+	int edges() {
+		int n = 0;
+		for (int d : down) if (d >= 0) n++;
+		return n;
+	}
+
+	int dams() {
+		int n = 0;
+		for (int i = 0; i < size; i++) if (isDam(i)) n++;
+		return n;
+	}
+
+	private boolean isDam(int i) {
+		return i % DAM_EVERY == DAM_EVERY / 2 && down[i] >= 0;
+	}
+
+	// Statements for every body, kept in the global array net so later statements can refer to them
+	void bodies(Consumer<String> out) {
+		Random random = new Random(seed * 31 + 1);
+		out.accept("Body[] net = [];");
+		for (int i = 0; i < size; i++) {
+			out.accept("net.push(Body(\"b" + i + "\", " + (1 + random.nextInt(9)) + "km2, " + random.nextInt(50) + "ML));");
+		}
+	}
+
+	// Headwaters first: each connect's target has no outflow yet, so the cycle check stops straight away.
+	// Outlet first makes the check walk all the way down to the outlet for every edge.
+	void connect(boolean headwatersFirst, Consumer<String> out) {
+		Random random = new Random(seed * 31 + 2);
+		int[] caps = new int[size];
+		for (int i = 0; i < size; i++) caps[i] = random.nextDouble() < 0.3 ? 1 + random.nextInt(20) : 0;
+		for (int k = 0; k < size; k++) {
+			int i = headwatersFirst ? size - 1 - k : k;
+			if (down[i] < 0) continue;
+			String cap = caps[i] > 0 ? ", " + caps[i] + "ML" : "";
+			out.accept("connect(net[" + i + "], net[" + down[i] + "]" + cap + ");");
+		}
+	}
+
+	// Baseflow and rain on the headwaters, abstraction along the way, the sea at each outlet, and dams
+	// that open once they fill past a threshold
+	void setup(int days, Consumer<String> out) {
+		Random random = new Random(seed * 31 + 3);
+		for (int i = 0; i < size; i++) {
+			String b = "net[" + i + "]";
+			if (upstream[i] == 0) {
+				out.accept("source(" + b + ", " + (1 + random.nextInt(5)) + "ML);");
+				out.accept("rain(" + b + ", " + (5 + random.nextInt(45)) + "mm, [40%, 30%, 20%, 10%]);");
+				if (i % 4 == 0 && days > 1) out.accept("rain_at(" + b + ", " + days / 2 + ", " + (5 + random.nextInt(45)) + "mm, [50%, 50%]);");
+			}
+			if (down[i] < 0) out.accept("sink(" + b + ", 1TL);");
+			else if (i % 10 == 0) out.accept("sink(" + b + ", " + (1 + random.nextInt(3)) + "ML);");
+			if (isDam(i)) {
+				String dam = "dam" + i;
+				out.accept("Dam " + dam + " = Dam(" + b + ");");
+				out.accept(dam + ".close();");
+				out.accept("None open_" + dam + "() { if (!" + dam + ".is_open) " + dam + ".open(); }");
+				out.accept("when(" + b + ", \"above\", " + (40 + random.nextInt(60)) + "ML, open_" + dam + ");");
+			}
+		}
+	}
+}
@@ -0,0 +1,254 @@
+import java.io.*;
+import java.lang.management.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.*;
+
+// Scaling benchmark: generates networks of each shape and size, builds and simulates them, and
+// writes one CSV row per case. Every case runs in a fresh JVM with this JVM's options, so heap and
+// JIT state from one case never leak into the next.
+//
+// Each phase is timed on its own, with scanning, parsing and analysis of the generated source
+// counted separately under compile_ms:
+//   bodies     creating every Body
+//   connect    connect() for every edge, including the stdlib cycle check
+//   setup      sources, sinks, rain, dams and their rules
+//   first_day  simulate(1), which lays the network out in topological order
+//   simulate   the remaining days
+public final class ScalingBench {
+	static final String HEADER = "label,shape,bodies,edges,dams,days,order,phases,status,"
+		+ "compile_ms,bodies_ms,connect_ms,setup_ms,first_day_ms,simulate_ms,total_ms,heap_mb";
+	// Statements compiled and run together
+	private static final int CHUNK = 10_000;
+
+	private static List<Network.Shape> shapes = List.of(Network.Shape.values());
+	private static List<Integer> sizes = List.of(10, 100, 1_000, 10_000, 100_000, 1_000_000);
+	private static int days = 100;
+	private static long seed = 1;
+	private static boolean headwatersFirst = true;
+	private static String label = "";
+	private static Path out = null;
+	private static Path emit = null;
+
+	public static void main(String[] args) throws Exception {
+		String single = null;
+		for (String arg : args) {
+			if (arg.startsWith("--case=")) single = arg.substring("--case=".length());
+			else if (!option(arg)) usage();
+		}
+		if (single != null) {
+			// Child mode, print the row for one case
+			String[] c = single.split(":");
+			System.out.println(measure(Network.generate(Network.Shape.valueOf(c[0]), Integer.parseInt(c[1]), seed)));
+			return;
+		}
+		if (emit != null) {
+			emitAll();
+			return;
+		}
+		runAll(args);
+	}
+
+	private static void usage() {
+		System.out.println("Usage: ScalingBench [options]");
+		System.out.println("  --shapes=chain,tree,dendritic,catchments");
+		System.out.println("  --sizes=10,100,...        bodies per network (default 10 to 1000000)");
+		System.out.println("  --days=<n>                days to simulate (default 100)");
+		System.out.println("  --seed=<n>                generator seed (default 1)");
+		System.out.println("  --order=headwaters|outlet connect from the headwaters down (default) or from the outlet up");
+		System.out.println("  --label=<text>            first CSV column, e.g. a version to compare against");
+		System.out.println("  --out=<file>              append rows to a CSV file instead of stdout");
+		System.out.println("  --emit=<dir>              write each case as a RainLang script instead of running it");
+		System.exit(RainLang.ERR_INVALID_USAGE);
+	}
+
+	private static boolean option(String arg) {
+		int eq = arg.indexOf('=');
+		if (!arg.startsWith("--") || eq < 0) return false;
+		String name = arg.substring(2, eq);
+		String value = arg.substring(eq + 1);
+		try {
+			switch (name) {
+				case "shapes" -> {
+					List<Network.Shape> list = new ArrayList<>();
+					for (String s : value.split(",")) list.add(Network.Shape.valueOf(s.trim().toUpperCase(Locale.ROOT)));
+					shapes = list;
+				}
+				case "sizes" -> {
+					List<Integer> list = new ArrayList<>();
+					for (String s : value.split(",")) {
+						int n = Integer.parseInt(s.trim());
+						if (n < 1) return false;
+						list.add(n);
+					}
+					sizes = list;
+				}
+				case "days" -> {
+					days = Integer.parseInt(value);
+					if (days < 1) return false;
+				}
+				case "seed" -> seed = Long.parseLong(value);
+				case "order" -> {
+					if (value.equals("headwaters")) headwatersFirst = true;
+					else if (value.equals("outlet")) headwatersFirst = false;
+					else return false;
+				}
+				case "label" -> label = value;
+				case "out" -> out = Paths.get(value);
+				case "emit" -> emit = Paths.get(value);
+				default -> {
+					return false;
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+		return true;
+	}
+
+	// One child JVM per case, rows written as each case finishes
+	private static void runAll(String[] args) throws IOException, InterruptedException {
+		boolean header = out == null || !Files.exists(out) || Files.size(out) == 0;
+		try (PrintStream csv = out == null ? new PrintStream(System.out, true)
+				: new PrintStream(new FileOutputStream(out.toFile(), true), true, StandardCharsets.UTF_8)) {
+			if (header) csv.println(HEADER);
+			for (Network.Shape shape : shapes) {
+				for (int size : sizes) {
+					if (out != null) System.err.println("Running " + shape.name().toLowerCase(Locale.ROOT) + " with " + size + " bodies");
+					csv.println(child(shape, size, args));
+				}
+			}
+		}
+	}
+
+	private static String child(Network.Shape shape, int size, String[] args) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<>();
+		command.add(ProcessHandle.current().info().command().orElse("java"));
+		command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(ScalingBench.class.getName());
+		for (String arg : args) if (!arg.startsWith("--out=")) command.add(arg);
+		command.add("--case=" + shape + ":" + size);
+
+		Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+		String row = null;
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) row = line;
+		}
+		int status = process.waitFor();
+		if (status == 0 && row != null) return row;
+		// Ran out of memory or failed, keep the row so the curve shows where it stopped
+		Network net = Network.generate(shape, size, seed);
+		return String.join(",", csv(label), name(shape), Integer.toString(size), Integer.toString(net.edges()),
+			Integer.toString(net.dams()), Integer.toString(days), order(), Phases.BEST.name(), "failed(" + status + ")",
+			"", "", "", "", "", "", "", "");
+	}
+
+	private static void emitAll() throws IOException {
+		Files.createDirectories(emit);
+		for (Network.Shape shape : shapes) {
+			for (int size : sizes) {
+				Path file = emit.resolve(name(shape) + "-" + size + ".txt");
+				try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+					Network net = Network.generate(shape, size, seed);
+					net.bodies(w::println);
+					net.connect(headwatersFirst, w::println);
+					net.setup(days, w::println);
+					w.println("simulate(" + days + ");");
+					w.println("hydrology_report(0, 0);");
+				}
+				System.err.println("Wrote " + file);
+			}
+		}
+	}
+
+	private static String measure(Network net) throws IOException {
+		Runner runner = new Runner();
+		long start = System.nanoTime();
+		long[] phase = new long[5];
+		phase[0] = runner.phase(net::bodies);
+		phase[1] = runner.phase(o -> net.connect(headwatersFirst, o));
+		phase[2] = runner.phase(o -> net.setup(days, o));
+		phase[3] = runner.phase(o -> o.accept("simulate(1);"));
+		phase[4] = runner.phase(o -> o.accept("simulate(" + (days - 1) + ");"));
+		long total = System.nanoTime() - start;
+
+		System.gc();
+		long heap = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+		StringBuilder row = new StringBuilder();
+		row.append(String.join(",", csv(label), name(net.shape), Integer.toString(net.size), Integer.toString(net.edges()),
+			Integer.toString(net.dams()), Integer.toString(days), order(), Phases.BEST.name(), "ok"));
+		row.append(',').append(millis(runner.compile));
+		for (long p : phase) row.append(',').append(millis(p));
+		row.append(',').append(millis(total));
+		row.append(',').append(heap / (1 << 20));
+		return row.toString();
+	}
+
+	private static String name(Network.Shape shape) {
+		return shape.name().toLowerCase(Locale.ROOT);
+	}
+
+	private static String order() {
+		return headwatersFirst ? "headwaters" : "outlet";
+	}
+
+	private static String millis(long nanos) {
+		return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+	}
+
+	private static String csv(String s) {
+		if (s.indexOf(',') < 0 && s.indexOf('"') < 0) return s;
+		return "\"" + s.replace("\"", "\"\"") + "\"";
+	}
+
+	// An engine with the standard library loaded, fed generated source a chunk at a time
+	private static final class Runner {
+		private final RainEngine engine = new RainEngine();
+		private final StringBuilder pending = new StringBuilder();
+		private int lines = 0;
+		// Time spent scanning, parsing and analysing so far
+		long compile = 0;
+
+		Runner() {
+			engine.loadStdlib();
+			check();
+		}
+
+		// Run the statements one phase produces, returns its time less the compile time within it
+		long phase(Consumer<Consumer<String>> statements) {
+			long start = System.nanoTime();
+			long compiled = compile;
+			statements.accept(line -> {
+				pending.append(line).append('\n');
+				if (++lines == CHUNK) drain();
+			});
+			drain();
+			return System.nanoTime() - start - (compile - compiled);
+		}
+
+		private void drain() {
+			if (pending.length() == 0) return;
+			String source = pending.toString();
+			pending.setLength(0);
+			lines = 0;
+			run(source);
+		}
+
+		private void run(String source) {
+			long start = System.nanoTime();
+			List<Stmt> program = engine.compile(source, "generated");
+			compile += System.nanoTime() - start;
+			check();
+			engine.execute(program, "generated");
+			check();
+		}
+
+		private void check() {
+			engine.interpreter().output.flush();
+			if (engine.errorCount() > 0) throw new IllegalStateException("The generated script failed, see the errors above");
+		}
+	}
+}
@@ -11,4 +11,9 @@ copy /Y ".\RainLang\standard_lib.txt" ".\build\" >nul
 echo Standard library added
 
 echo Compiling solution
-javac -d build src\*.java
+javac -encoding UTF-8 -d build src\*.java
+
+echo Compiling vectorised day phases
+rem Optional, needs the jdk.incubator.vector module. Without it the scalar phases are used.
+javac -encoding UTF-8 --add-modules jdk.incubator.vector -cp build -d build src\simd\*.java >nul 2>&1
+if errorlevel 1 (echo Vector API not available, using the scalar phases) else (echo Vector API phases built)
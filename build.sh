@@ -11,5 +11,12 @@ cp -f RainLang/standard_lib.txt build/
 echo "Standard library added."
 
 echo "Compiling solution..."
-javac -d build src/*.java
+javac -encoding UTF-8 -d build src/*.java
+echo "Compiling vectorised day phases..."
+# Optional, needs the jdk.incubator.vector module. Without it the scalar phases are used.
+if javac -encoding UTF-8 --add-modules jdk.incubator.vector -cp build -d build src/simd/*.java 2>/dev/null; then
+	echo "Vector API phases built."
+else
+	echo "Vector API not available, using the scalar phases."
+fi
 echo "Build complete."
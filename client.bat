@@ -0,0 +1,2 @@
+@echo off
+java -XX:TieredStopAtLevel=1 -cp build RainClient %*
\ No newline at end of file
@@ -0,0 +1,4 @@
+#!/bin/bash
+set -e
+# Client JVMs only relay bytes, so skip the optimising compiler to start faster
+java -XX:TieredStopAtLevel=1 -cp build RainClient "$@"
@@ -1,3 +1,5 @@
+import java.io.*;
+import java.nio.file.*;
 import java.util.*;
 
 class Builtins {
@@ -6,14 +8,26 @@ class Builtins {
 		// Utility
 		env.define("print", new Callable() {
 			@Override public int arity() { return 1; }
-			@Override public Object call(Interpreter interpreter, Token paren, List<Object> args) { System.out.println(interpreter.display(args.get(0))); return null; }
+			@Override public Object call(Interpreter interpreter, Token paren, List<Object> args) { interpreter.output.println(interpreter.display(args.get(0))); return null; }
 			@Override public String toString() { return "<native print fn>"; }
 		});
 		env.define("print_raw", new Callable() {
 			@Override public int arity() { return 1; }
-			@Override public Object call(Interpreter interpreter, Token paren, List<Object> args) { System.out.print(interpreter.display(args.get(0))); return null; }
+			@Override public Object call(Interpreter interpreter, Token paren, List<Object> args) { interpreter.output.print(interpreter.display(args.get(0))); return null; }
 			@Override public String toString() { return "<native print_raw fn>"; }
 		});
+		env.define("flush", new Callable() {
+			@Override public int arity() { return 0; }
+			@Override public Object call(Interpreter interpreter, Token paren, List<Object> args) {
+				try {
+					interpreter.output.flush();
+				} catch (UncheckedIOException e) {
+					throw new RainRuntimeError(paren, e.getMessage());
+				}
+				return null;
+			}
+			@Override public String toString() { return "<native flush fn>"; }
+		});
 		env.define("str", new Callable() {
 			@Override public int arity() { return 1; }
 			@Override public Object call(Interpreter interpreter, Token paren, List<Object> args) { return interpreter.display(args.get(0)); }
@@ -30,12 +44,274 @@ class Builtins {
 			}
 			@Override public String toString() { return "<native assert fn>"; }
 		});
+
+		env.define("random", new Callable() {
+			@Override public int arity() { return 0; }
+			@Override public Object call(Interpreter interpreter, Token paren, List<Object> args) { return new NumericValue(Type.val(), interpreter.nextRandom()); }
+			@Override public String toString() { return "<native random fn>"; }
+		});
+		env.define("seed", new Callable() {
+			@Override public int arity() { return 1; }
+			@Override public Object call(Interpreter interpreter, Token paren, List<Object> args) {
+				interpreter.seed((long) ((NumericValue) args.get(0)).value);
+				return null;
+			}
+			@Override public String toString() { return "<native seed fn>"; }
+		});
+
+		// Runs fn(i) for i in 0..n-1 against forked copies of the current state, concurrently
+		env.define("ensemble", new Callable() {
+			@Override public int arity() { return 2; }
+			@Override public Object call(Interpreter interpreter, Token paren, List<Object> args) {
+				double n = ((NumericValue) args.get(0)).value;
+				if (n < 0 || Math.floor(n) != n) {
+					throw new RainRuntimeError(paren, "Ensemble size must be a non-negative integer.");
+				}
+				if (!(args.get(1) instanceof OverloadSet set) || set.size() != 1 || set.get(0).arity() != 1) {
+					throw new RainRuntimeError(paren, "Ensemble expects a function taking the member index.");
+				}
+				return Ensemble.run(interpreter, paren, (int) n, set.get(0));
+			}
+			@Override public String toString() { return "<native ensemble fn>"; }
+		});
+
+		// Simulation engine, only called from the stdlib
+		env.define("__simulate", new Callable() {
+			@Override public int arity() { return 1; }
+			@Override public Object call(Interpreter interpreter, Token paren, List<Object> args) {
+				interpreter.simulation.run(paren, ((NumericValue) args.get(0)).value);
+				return null;
+			}
+			@Override public String toString() { return "<native __simulate fn>"; }
+		});
+		env.define("days_skipped", new Callable() {
+			@Override public int arity() { return 0; }
+			@Override public Object call(Interpreter interpreter, Token paren, List<Object> args) {
+				return new NumericValue(Type.val(), interpreter.simulation.skippedDays());
+			}
+			@Override public String toString() { return "<native days_skipped fn>"; }
+		});
+		// Counters of the last simulate() call, or of every call so far, in SimStats.NAMES order
+		env.define("__sim_stats", new Callable() {
+			@Override public int arity() { return 1; }
+			@Override public Object call(Interpreter interpreter, Token paren, List<Object> args) {
+				return interpreter.simulation.stats((Boolean) args.get(0)).values();
+			}
+			@Override public String toString() { return "<native __sim_stats fn>"; }
+		});
+		// when(body, condition, threshold, fn): simulate() calls fn() before the first day on which
+		// the body's volume has gone "above" or "below" threshold, or is "crossing" it either way
+		env.define("when", new Callable() {
+			@Override public int arity() { return 4; }
+			@Override public Object call(Interpreter interpreter, Token paren, List<Object> args) {
+				Simulation.Condition condition = switch ((String) args.get(1)) {
+					case "above" -> Simulation.Condition.ABOVE;
+					case "below" -> Simulation.Condition.BELOW;
+					case "crossing" -> Simulation.Condition.CROSSING;
+					default -> throw new RainRuntimeError(paren, "Rule condition must be \"above\", \"below\" or \"crossing\".");
+				};
+				if (!(args.get(3) instanceof OverloadSet set) || set.size() != 1 || set.get(0).arity() != 0) {
+					throw new RainRuntimeError(paren, "when expects a function taking no arguments.");
+				}
+				interpreter.simulation.addRule((RainInstance) args.get(0), condition, ((NumericValue) args.get(2)).value, set.get(0));
+				return null;
+			}
+			@Override public String toString() { return "<native when fn>"; }
+		});
+		env.define("__rain_series", new Callable() {
+			@Override public int arity() { return 3; }
+			@Override public Object call(Interpreter interpreter, Token paren, List<Object> args) {
+				long today = (long) ((NumericValue) interpreter.globals.getLocal("__DAY")).value;
+				interpreter.simulation.addRain((RainInstance) args.get(0), today, numbers(args.get(1)), numbers(args.get(2)));
+				return null;
+			}
+			@Override public String toString() { return "<native __rain_series fn>"; }
+		});
+		env.define("__rain_at", new Callable() {
+			@Override public int arity() { return 4; }
+			@Override public Object call(Interpreter interpreter, Token paren, List<Object> args) {
+				long day = day(interpreter, paren, args.get(1));
+				interpreter.simulation.addRain((RainInstance) args.get(0), day, numbers(args.get(2)), numbers(args.get(3)));
+				return null;
+			}
+			@Override public String toString() { return "<native __rain_at fn>"; }
+		});
+		// at_day(day, fn): simulate() calls fn() before simulating that day
+		env.define("at_day", new Callable() {
+			@Override public int arity() { return 2; }
+			@Override public Object call(Interpreter interpreter, Token paren, List<Object> args) {
+				long day = day(interpreter, paren, args.get(0));
+				if (!(args.get(1) instanceof OverloadSet set) || set.size() != 1 || set.get(0).arity() != 0) {
+					throw new RainRuntimeError(paren, "at_day expects a function taking no arguments.");
+				}
+				interpreter.simulation.addCall(day, set.get(0));
+				return null;
+			}
+			@Override public String toString() { return "<native at_day fn>"; }
+		});
+		env.define("__graph_add", new Callable() {
+			@Override public int arity() { return 1; }
+			@Override public Object call(Interpreter interpreter, Token paren, List<Object> args) { interpreter.simulation.addBody((RainInstance) args.get(0)); return null; }
+			@Override public String toString() { return "<native __graph_add fn>"; }
+		});
+		env.define("__graph_remove", new Callable() {
+			@Override public int arity() { return 1; }
+			@Override public Object call(Interpreter interpreter, Token paren, List<Object> args) { interpreter.simulation.removeBody((RainInstance) args.get(0)); return null; }
+			@Override public String toString() { return "<native __graph_remove fn>"; }
+		});
+		env.define("__graph_connect", new Callable() {
+			@Override public int arity() { return 2; }
+			@Override public Object call(Interpreter interpreter, Token paren, List<Object> args) { interpreter.simulation.connected((RainInstance) args.get(0), (RainInstance) args.get(1)); return null; }
+			@Override public String toString() { return "<native __graph_connect fn>"; }
+		});
+		env.define("__graph_disconnect", new Callable() {
+			@Override public int arity() { return 2; }
+			@Override public Object call(Interpreter interpreter, Token paren, List<Object> args) { interpreter.simulation.disconnected((RainInstance) args.get(0), (RainInstance) args.get(1)); return null; }
+			@Override public String toString() { return "<native __graph_disconnect fn>"; }
+		});
+
+		// Days [from, to) of the bodies' history, to < 0 for all of it
+		env.define("__hydrology_report", new Callable() {
+			@Override public int arity() { return 3; }
+			@Override public Object call(Interpreter interpreter, Token paren, List<Object> args) {
+				@SuppressWarnings("unchecked")
+				List<RainInstance> bodies = (List<RainInstance>) (List<?>) args.get(0);
+				double from = ((NumericValue) args.get(1)).value;
+				double to = ((NumericValue) args.get(2)).value;
+				if (from < 0 || from != Math.floor(from) || to != Math.floor(to)) {
+					throw new RainRuntimeError(paren, "Report days must be whole numbers from 0.");
+				}
+				try {
+					HydrologyReport.write(interpreter.output, bodies, (long) from, (long) to);
+				} catch (IOException | UncheckedIOException e) {
+					throw new RainRuntimeError(paren, e.getMessage());
+				}
+				return null;
+			}
+			@Override public String toString() { return "<native __hydrology_report fn>"; }
+		});
+		// Instances and estimated heap by class, array type and strings, from the caller's scope outwards
+		env.define("memory_report", new Callable() {
+			@Override public int arity() { return 0; }
+			@Override public Object call(Interpreter interpreter, Token paren, List<Object> args) {
+				try {
+					MemoryReport.of(interpreter, interpreter.environment()).write(interpreter.output);
+				} catch (IOException | UncheckedIOException e) {
+					throw new RainRuntimeError(paren, e.getMessage());
+				}
+				return null;
+			}
+			@Override public String toString() { return "<native memory_report fn>"; }
+		});
+		env.define("export_history", new Callable() {
+			@Override public int arity() { return 1; }
+			@Override public Object call(Interpreter interpreter, Token paren, List<Object> args) {
+				@SuppressWarnings("unchecked")
+				List<RainInstance> registry = (List<RainInstance>) interpreter.globals.getLocal("__BODY_REGISTRY");
+				String path = (String) args.get(0);
+				try {
+					HistoryFile.write(interpreter.directory.resolve(path), registry);
+				} catch (IOException | InvalidPathException e) {
+					throw new RainRuntimeError(paren, "Failed to export history to '" + path + "': " + e.getMessage());
+				}
+				return null;
+			}
+			@Override public String toString() { return "<native export_history fn>"; }
+		});
+
+		env.define("checkpoint", new Callable() {
+			@Override public int arity() { return 1; }
+			@Override public Object call(Interpreter interpreter, Token paren, List<Object> args) {
+				String path = (String) args.get(0);
+				try {
+					Checkpoint.write(interpreter, interpreter.directory.resolve(path));
+				} catch (IOException | InvalidPathException e) {
+					throw new RainRuntimeError(paren, "Failed to write checkpoint '" + path + "': " + e.getMessage());
+				}
+				return null;
+			}
+			@Override public String toString() { return "<native checkpoint fn>"; }
+		});
+		env.define("restore", new Callable() {
+			@Override public int arity() { return 1; }
+			@Override public Object call(Interpreter interpreter, Token paren, List<Object> args) {
+				String path = (String) args.get(0);
+				try {
+					Checkpoint.restore(interpreter, interpreter.directory.resolve(path));
+				} catch (NoSuchFileException e) {
+					throw new RainRuntimeError(paren, "No checkpoint found at '" + path + "'.");
+				} catch (IOException | InvalidPathException e) {
+					throw new RainRuntimeError(paren, "Failed to restore checkpoint '" + path + "': " + e.getMessage());
+				}
+				return null;
+			}
+			@Override public String toString() { return "<native restore fn>"; }
+		});
+		// checkpoint_every(days, path): checkpoint during simulate() every 'days' days, 0 turns it off
+		env.define("checkpoint_every", new Callable() {
+			@Override public int arity() { return 2; }
+			@Override public Object call(Interpreter interpreter, Token paren, List<Object> args) {
+				double days = ((NumericValue) args.get(0)).value;
+				if (days < 0 || days != Math.floor(days)) {
+					throw new RainRuntimeError(paren, "Checkpoint interval must be a whole number of days.");
+				}
+				String path = (String) args.get(1);
+				try {
+					interpreter.simulation.checkpointEvery((long) days, interpreter.directory.resolve(path));
+				} catch (InvalidPathException e) {
+					throw new RainRuntimeError(paren, "Invalid checkpoint path '" + path + "': " + e.getMessage());
+				}
+				return null;
+			}
+			@Override public String toString() { return "<native checkpoint_every fn>"; }
+		});
+	}
+
+	// A whole simulation day that has not passed yet
+	private static long day(Interpreter interpreter, Token paren, Object value) {
+		double day = ((NumericValue) value).value;
+		double today = ((NumericValue) interpreter.globals.getLocal("__DAY")).value;
+		if (day != Math.floor(day)) throw new RainRuntimeError(paren, "Day must be a whole number.");
+		if (day < today) throw new RainRuntimeError(paren, "Day " + (long) day + " has already been simulated, today is day " + (long) today + ".");
+		return (long) day;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static double[] numbers(Object list) {
+		List<Object> l = (List<Object>) list;
+		double[] out = new double[l.size()];
+		for (int i = 0; i < out.length; i++) out[i] = ((NumericValue) l.get(i)).value;
+		return out;
 	}
 
 	static void registerTypes(TypeEnvironment tenv) {
 		tenv.define("print", Type.function(Type.none(), List.of(Type.unknown())));
 		tenv.define("print_raw", Type.function(Type.none(), List.of(Type.unknown())));
+		tenv.define("flush", Type.function(Type.none(), List.of()));
 		tenv.define("str", Type.function(Type.string(), List.of(Type.unknown())));
 		tenv.define("assert", Type.function(Type.none(), List.of(Type.bool(), Type.string())));
+
+		tenv.define("random", Type.function(Type.val(), List.of()));
+		tenv.define("seed", Type.function(Type.none(), List.of(Type.val())));
+		tenv.define("ensemble", Type.function(Type.arrayOf(Type.arrayOf(Type.arrayOf(Type.volume()))), List.of(Type.val(), Type.unknown())));
+
+		Type body = Type.classType("Body");
+		tenv.define("days_skipped", Type.function(Type.val(), List.of()));
+		tenv.define("__sim_stats", Type.function(Type.arrayOf(Type.val()), List.of(Type.bool())));
+		tenv.define("when", Type.function(Type.none(), List.of(body, Type.string(), Type.volume(), Type.unknown())));
+		tenv.define("__simulate", Type.function(Type.none(), List.of(Type.val())));
+		tenv.define("__rain_series", Type.function(Type.none(), List.of(body, Type.arrayOf(Type.rain()), Type.arrayOf(Type.val()))));
+		tenv.define("__rain_at", Type.function(Type.none(), List.of(body, Type.val(), Type.arrayOf(Type.rain()), Type.arrayOf(Type.val()))));
+		tenv.define("at_day", Type.function(Type.none(), List.of(Type.val(), Type.unknown())));
+		tenv.define("__graph_add", Type.function(Type.none(), List.of(body)));
+		tenv.define("__graph_remove", Type.function(Type.none(), List.of(body)));
+		tenv.define("__graph_connect", Type.function(Type.none(), List.of(body, body)));
+		tenv.define("__graph_disconnect", Type.function(Type.none(), List.of(body, body)));
+		tenv.define("memory_report", Type.function(Type.none(), List.of()));
+		tenv.define("export_history", Type.function(Type.none(), List.of(Type.string())));
+		tenv.define("checkpoint", Type.function(Type.none(), List.of(Type.string())));
+		tenv.define("restore", Type.function(Type.none(), List.of(Type.string())));
+		tenv.define("checkpoint_every", Type.function(Type.none(), List.of(Type.val(), Type.string())));
+		tenv.define("__hydrology_report", Type.function(Type.none(), List.of(Type.arrayOf(body), Type.val(), Type.val())));
 	}
 }
@@ -7,9 +7,19 @@ final class CallResolution {
 		Resolved(String name, int slot) { this.name = name; this.slot = slot; }
 	}
 
-	private static final Map<Expr.Call, Resolved> map = Collections.synchronizedMap(new WeakHashMap<>());
+	private final Map<Expr.Call, Resolved> map;
+
+	CallResolution() { this.map = Collections.synchronizedMap(new WeakHashMap<>()); }
+	private CallResolution(Map<Expr.Call, Resolved> map) { this.map = map; }
 
 	// Determine which calls things map to
-	static void bind(Expr.Call call, String name, int slot) { map.put(call, new Resolved(name, slot)); }
-	static Resolved get(Expr.Call call) { return map.get(call); }
+	void bind(Expr.Call call, String name, int slot) { map.put(call, new Resolved(name, slot)); }
+	Resolved get(Expr.Call call) { return map.get(call); }
+
+	// Read-only snapshot for a forked interpreter, no locking on lookups
+	CallResolution copy() {
+		synchronized (map) {
+			return new CallResolution(new HashMap<>(map));
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,298 @@
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+
+// Saves and restores the simulation state: every registered body (volumes, sources, sinks, gated edges,
+// caps and history), scheduled rain, dam gates and __DAY. Other script variables are not saved.
+// Restoring replaces the registry with new Body and Dam instances, find_body() and find_dam()
+// look them up again.
+final class Checkpoint {
+	private static final String MAGIC = "RAINCKPT";
+	private static final int VERSION = 1;
+
+	private Checkpoint() {}
+
+	// Written to a temporary file first, so a crash mid-write leaves the previous checkpoint intact
+	static void write(Interpreter interpreter, Path path) throws IOException {
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		try {
+			writeState(interpreter, tmp);
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			// Gone once moved into place, what a failed write left behind
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private static void writeState(Interpreter interpreter, Path file) throws IOException {
+		List<RainInstance> registry = instances(interpreter.globals.getLocal("__BODY_REGISTRY"));
+		List<RainInstance> dams = instances(interpreter.globals.getLocal("__DAM_REGISTRY"));
+		Map<Object, Integer> index = new IdentityHashMap<>();
+		for (int i = 0; i < registry.size(); i++) index.put(registry.get(i), i);
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+			out.writeBytes(MAGIC);
+			out.writeInt(VERSION);
+			out.writeDouble(num(interpreter.globals.getLocal("__DAY")));
+
+			out.writeInt(registry.size());
+			for (RainInstance b : registry) {
+				out.writeUTF((String) b.getField("label"));
+				out.writeDouble(num(b.getField("area")));
+				out.writeDouble(num(b.getField("volume")));
+				out.writeDouble(num(b.getField("sources")));
+				out.writeDouble(num(b.getField("sinks")));
+				List<Object> outflows = list(b.getField("outflows"));
+				List<Object> rates = list(b.getField("outflow_rates"));
+				List<Object> gates = list(b.getField("outflow_open"));
+				out.writeInt(outflows.size());
+				for (int e = 0; e < outflows.size(); e++) {
+					out.writeInt(index.getOrDefault(outflows.get(e), -1));
+					out.writeDouble(num(rates.get(e)));
+					out.writeBoolean((Boolean) gates.get(e));
+				}
+				List<Object> inflows = list(b.getField("inflows"));
+				out.writeInt(inflows.size());
+				for (Object o : inflows) out.writeInt(index.getOrDefault(o, -1));
+				List<Object> history = list(b.getField("__history"));
+				out.writeInt(history.size());
+				if (history instanceof HistoryColumn column) {
+					for (int d = 0; d < column.size(); d++) out.writeDouble(column.value(d));
+				} else {
+					for (Object v : history) out.writeDouble(num(v));
+				}
+			}
+
+			List<RainInstance> wet = new ArrayList<>();
+			for (RainInstance b : registry) if (interpreter.simulation.rainOn(b) != null) wet.add(b);
+			out.writeInt(wet.size());
+			for (RainInstance b : wet) {
+				RainSchedule r = interpreter.simulation.rainOn(b);
+				double[] inflow = r.inflow();
+				out.writeInt(index.get(b));
+				out.writeLong(r.origin());
+				out.writeInt(inflow.length);
+				for (double v : inflow) out.writeDouble(v);
+			}
+
+			out.writeInt(dams.size());
+			for (RainInstance dam : dams) {
+				out.writeInt(index.getOrDefault(dam.getField("body"), -1));
+				Object open = dam.getField("is_open");
+				out.writeByte(open == null ? 0 : (Boolean) open ? 2 : 1);
+				List<Object> saved = list(dam.getField("saved_outflows"));
+				List<Object> savedRates = list(dam.getField("saved_rates"));
+				out.writeInt(saved.size());
+				for (int e = 0; e < saved.size(); e++) {
+					out.writeInt(index.getOrDefault(saved.get(e), -1));
+					out.writeDouble(num(savedRates.get(e)));
+				}
+			}
+		}
+	}
+
+	// The whole file is read and checked before anything in the interpreter is replaced
+	static void restore(Interpreter interpreter, Path path) throws IOException {
+		Saved saved;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+			saved = read(in);
+		} catch (EOFException e) {
+			throw new IOException("Truncated checkpoint");
+		}
+
+		Environment globals = interpreter.globals;
+		Simulation simulation = interpreter.simulation;
+		RainClass bodyClass = (RainClass) globals.getLocal("Body");
+		RainClass damClass = (RainClass) globals.getLocal("Dam");
+		List<Object> registry = list(globals.getLocal("__BODY_REGISTRY"));
+		List<Object> damRegistry = list(globals.getLocal("__DAM_REGISTRY"));
+		// Before the registry goes, so the replaced bodies' history is released
+		simulation.reset();
+		registry.clear();
+		damRegistry.clear();
+
+		int n = saved.labels.length;
+		List<RainInstance> bodies = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			RainInstance b = instance(bodyClass);
+			b.setField("label", saved.labels[i]);
+			b.setField("area", new NumericValue(Type.area(), saved.area[i]));
+			b.setField("volume", new NumericValue(Type.volume(), saved.volume[i]));
+			b.setField("sources", new NumericValue(Type.volume(), saved.sources[i]));
+			b.setField("sinks", new NumericValue(Type.volume(), saved.sinks[i]));
+			bodies.add(b);
+			registry.add(b);
+			simulation.addBody(b);
+		}
+		for (int i = 0; i < n; i++) {
+			List<Object> outflows = new ArrayList<>();
+			List<Object> rates = new ArrayList<>();
+			List<Object> gates = new ArrayList<>();
+			for (int e = 0; e < saved.outflows[i].length; e++) {
+				// Edges to bodies that were no longer registered are dropped
+				if (saved.outflows[i][e] < 0) continue;
+				outflows.add(bodies.get(saved.outflows[i][e]));
+				rates.add(new NumericValue(Type.volume(), saved.rates[i][e]));
+				gates.add(saved.gates[i][e]);
+			}
+			List<Object> inflows = new ArrayList<>();
+			for (int j : saved.inflows[i]) if (j >= 0) inflows.add(bodies.get(j));
+			bodies.get(i).setField("outflows", outflows);
+			bodies.get(i).setField("outflow_rates", rates);
+			bodies.get(i).setField("outflow_open", gates);
+			bodies.get(i).setField("inflows", inflows);
+		}
+		simulation.restoreHistory(bodies, saved.history);
+		for (int k = 0; k < saved.rainBody.length; k++) {
+			simulation.restoreRain(bodies.get(saved.rainBody[k]), new RainSchedule(saved.rainOrigin[k], saved.rain[k]));
+		}
+
+		for (int k = 0; k < saved.damBody.length; k++) {
+			if (saved.damBody[k] < 0) continue;
+			RainInstance dam = instance(damClass);
+			dam.setField("body", bodies.get(saved.damBody[k]));
+			dam.setField("is_open", saved.damOpen[k] == 0 ? null : saved.damOpen[k] == 2);
+			List<Object> outflows = new ArrayList<>();
+			List<Object> rates = new ArrayList<>();
+			for (int e = 0; e < saved.damOutflows[k].length; e++) {
+				if (saved.damOutflows[k][e] < 0) continue;
+				outflows.add(bodies.get(saved.damOutflows[k][e]));
+				rates.add(new NumericValue(Type.volume(), saved.damRates[k][e]));
+			}
+			dam.setField("saved_outflows", outflows);
+			dam.setField("saved_rates", rates);
+			damRegistry.add(dam);
+		}
+
+		globals.define("__DAY", new NumericValue(Type.val(), saved.day));
+	}
+
+	// Checkpoint contents, by registry index
+	private static final class Saved {
+		double day;
+		String[] labels;
+		double[] area, volume, sources, sinks;
+		int[][] outflows, inflows;
+		double[][] rates, history;
+		boolean[][] gates;
+		int[] rainBody;
+		long[] rainOrigin;
+		double[][] rain;
+		int[] damBody;
+		byte[] damOpen;
+		int[][] damOutflows;
+		double[][] damRates;
+	}
+
+	private static Saved read(DataInputStream in) throws IOException {
+		byte[] magic = new byte[MAGIC.length()];
+		in.readFully(magic);
+		if (!MAGIC.equals(new String(magic, StandardCharsets.US_ASCII))) throw new IOException("Not a RainLang checkpoint");
+		int version = in.readInt();
+		if (version != VERSION) throw new IOException("Unsupported checkpoint version " + version);
+
+		Saved s = new Saved();
+		s.day = in.readDouble();
+		int n = count(in);
+		s.labels = new String[n];
+		s.area = new double[n];
+		s.volume = new double[n];
+		s.sources = new double[n];
+		s.sinks = new double[n];
+		s.outflows = new int[n][];
+		s.rates = new double[n][];
+		s.gates = new boolean[n][];
+		s.inflows = new int[n][];
+		s.history = new double[n][];
+		for (int i = 0; i < n; i++) {
+			s.labels[i] = in.readUTF();
+			s.area[i] = in.readDouble();
+			s.volume[i] = in.readDouble();
+			s.sources[i] = in.readDouble();
+			s.sinks[i] = in.readDouble();
+			int k = count(in);
+			s.outflows[i] = new int[k];
+			s.rates[i] = new double[k];
+			s.gates[i] = new boolean[k];
+			for (int e = 0; e < k; e++) {
+				s.outflows[i][e] = body(in, n);
+				s.rates[i][e] = in.readDouble();
+				s.gates[i][e] = in.readBoolean();
+			}
+			s.inflows[i] = new int[count(in)];
+			for (int e = 0; e < s.inflows[i].length; e++) s.inflows[i][e] = body(in, n);
+			s.history[i] = doubles(in, count(in));
+		}
+
+		int wet = count(in);
+		s.rainBody = new int[wet];
+		s.rainOrigin = new long[wet];
+		s.rain = new double[wet][];
+		for (int k = 0; k < wet; k++) {
+			s.rainBody[k] = body(in, n);
+			if (s.rainBody[k] < 0) throw new IOException("Corrupt checkpoint: rain on an unknown body");
+			s.rainOrigin[k] = in.readLong();
+			s.rain[k] = doubles(in, count(in));
+		}
+
+		int dams = count(in);
+		s.damBody = new int[dams];
+		s.damOpen = new byte[dams];
+		s.damOutflows = new int[dams][];
+		s.damRates = new double[dams][];
+		for (int k = 0; k < dams; k++) {
+			s.damBody[k] = body(in, n);
+			s.damOpen[k] = in.readByte();
+			int m = count(in);
+			s.damOutflows[k] = new int[m];
+			s.damRates[k] = new double[m];
+			for (int e = 0; e < m; e++) {
+				s.damOutflows[k][e] = body(in, n);
+				s.damRates[k][e] = in.readDouble();
+			}
+		}
+		if (in.read() != -1) throw new IOException("Corrupt checkpoint: trailing data");
+		return s;
+	}
+
+	private static int count(DataInputStream in) throws IOException {
+		int n = in.readInt();
+		if (n < 0) throw new IOException("Corrupt checkpoint: negative count");
+		return n;
+	}
+
+	// A registry index, or -1 for a body that was not registered
+	private static int body(DataInputStream in, int n) throws IOException {
+		int i = in.readInt();
+		if (i < -1 || i >= n) throw new IOException("Corrupt checkpoint: body index " + i + " out of range");
+		return i;
+	}
+
+	private static double[] doubles(DataInputStream in, int n) throws IOException {
+		double[] out = new double[n];
+		for (int i = 0; i < n; i++) out[i] = in.readDouble();
+		return out;
+	}
+
+	// A new instance with every declared field present, like the class would create before its constructor
+	private static RainInstance instance(RainClass klass) {
+		RainInstance inst = new RainInstance(klass);
+		for (String f : klass.fieldNames) inst.defineField(f, null);
+		return inst;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<RainInstance> instances(Object v) {
+		return (List<RainInstance>) v;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Object> list(Object v) {
+		return (List<Object>) v;
+	}
+
+	private static double num(Object v) {
+		return ((NumericValue) v).value;
+	}
+}
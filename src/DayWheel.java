@@ -0,0 +1,128 @@
+import java.util.*;
+import java.util.function.*;
+
+// Entries keyed by simulation day. The next SLOTS days are a ring of buckets so adding one is O(1),
+// later days wait in a sorted overflow and move onto the ring as it turns.
+final class DayWheel<T> {
+	private static final int SLOTS = 1024;
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private final List<T>[] ring = new List[SLOTS];
+	private final BitSet used = new BitSet(SLOTS);
+	private final TreeMap<Long, List<T>> far = new TreeMap<>();
+	// The ring holds days base .. base + SLOTS - 1, anything earlier has been taken
+	private long base = 0;
+	private int size = 0;
+
+	// An entry for a day already taken is due at once
+	void add(long day, T item) {
+		if (day < base) day = base;
+		if (day - base >= SLOTS) {
+			far.computeIfAbsent(day, d -> new ArrayList<>()).add(item);
+			return;
+		}
+		int s = slot(day);
+		if (ring[s] == null) ring[s] = new ArrayList<>();
+		ring[s].add(item);
+		used.set(s);
+		size++;
+	}
+
+	// Move everything due on or before 'day' into out, earliest day first, in the order added
+	void take(long day, List<T> out) {
+		while (base <= day) {
+			if (size == 0) {
+				// Nothing on the ring, jump straight to the next day with entries
+				long next = far.isEmpty() ? Long.MAX_VALUE : far.firstKey();
+				if (next > day) {
+					base = day + 1;
+					refill();
+					return;
+				}
+				base = next;
+				refill();
+			}
+			int s = slot(base);
+			if (used.get(s)) {
+				out.addAll(ring[s]);
+				size -= ring[s].size();
+				ring[s].clear();
+				used.clear(s);
+			}
+			base++;
+			refill();
+		}
+	}
+
+	// Entries waiting, on the ring and further out
+	int entries() {
+		int n = size;
+		for (List<T> l : far.values()) n += l.size();
+		return n;
+	}
+
+	// Rough heap taken by the ring, the overflow and their lists, for memory_report()
+	long bytes() {
+		long bytes = MemoryReport.array(SLOTS, 4);
+		for (List<T> l : ring) if (l != null) bytes += list(l.size());
+		for (List<T> l : far.values()) bytes += MemoryReport.object(4 + 5 * 4) + MemoryReport.object(8) + list(l.size());
+		return bytes;
+	}
+
+	private static long list(int size) {
+		return MemoryReport.object(3 * 4) + MemoryReport.array(Math.max(size, 10), 4);
+	}
+
+	// First day from 'from' on with an entry, Long.MAX_VALUE if there is none
+	long next(long from) {
+		from = Math.max(from, base);
+		if (size > 0) {
+			// Slots from 'from' round to the end of the ring, skipping days before 'from'
+			int start = slot(from);
+			for (int s = used.nextSetBit(start); s >= 0; s = used.nextSetBit(s + 1)) {
+				if (dayOf(s) >= from) return dayOf(s);
+			}
+			for (int s = used.nextSetBit(0); s >= 0 && s < start; s = used.nextSetBit(s + 1)) {
+				if (dayOf(s) >= from) return dayOf(s);
+			}
+		}
+		Long key = far.ceilingKey(from);
+		return key == null ? Long.MAX_VALUE : key;
+	}
+
+	// Empty and back to day 0, a restored state can be earlier than anything taken so far
+	void clear() {
+		for (int s = used.nextSetBit(0); s >= 0; s = used.nextSetBit(s + 1)) ring[s].clear();
+		used.clear();
+		far.clear();
+		size = 0;
+		base = 0;
+	}
+
+	// Every entry with its day, earliest first
+	void forEach(ObjLongConsumer<T> action) {
+		for (long day = base; day < base + SLOTS; day++) {
+			int s = slot(day);
+			if (used.get(s)) for (T item : ring[s]) action.accept(item, day);
+		}
+		for (Map.Entry<Long, List<T>> e : far.entrySet()) {
+			for (T item : e.getValue()) action.accept(item, e.getKey());
+		}
+	}
+
+	private void refill() {
+		while (!far.isEmpty() && far.firstKey() - base < SLOTS) {
+			Map.Entry<Long, List<T>> e = far.pollFirstEntry();
+			for (T item : e.getValue()) add(e.getKey(), item);
+		}
+	}
+
+	private int slot(long day) {
+		return (int) Math.floorMod(day, (long) SLOTS);
+	}
+
+	// The day a ring slot currently stands for
+	private long dayOf(int s) {
+		return base + Math.floorMod(s - slot(base), SLOTS);
+	}
+}
@@ -0,0 +1,145 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+// Runs a script function over N forked copies of the interpreter state in parallel.
+// Each member gets its own globals, simulation engine, call resolution and random stream,
+// so members share nothing mutable with each other or with the parent.
+final class Ensemble {
+	private Ensemble() {}
+
+	// ensemble(n, fn): fn(i) runs in member i, returns every member's per-body history
+	static List<Object> run(Interpreter parent, Token paren, int n, RainFunction fn) {
+		List<java.util.concurrent.Callable<List<Object>>> tasks = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			// Fork on the calling thread so every member starts from the same state
+			Interpreter member = new Interpreter(parent.calls.copy(), parent.output, parent.errors);
+			member.seed(memberSeed(parent.seed(), i));
+			member.profiler = parent.profiler;
+			member.lineProfiler = parent.lineProfiler;
+			member.directory = parent.directory;
+			member.cancelled = parent.cancelled;
+			Copier copier = new Copier(parent, member);
+			copier.copyGlobals();
+			member.simulation.adopt(parent.simulation, copier::copy);
+			RainFunction entry = (RainFunction) copier.copy(fn);
+			final int index = i;
+			tasks.add(() -> {
+				entry.call(member, paren, List.of(new NumericValue(Type.val(), index)));
+				return histories(member);
+			});
+		}
+
+		List<Object> out = new ArrayList<>(n);
+		try {
+			List<Future<List<Object>>> results = ForkJoinPool.commonPool().invokeAll(tasks);
+			for (int i = 0; i < n; i++) {
+				try {
+					out.add(results.get(i).get());
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RainRuntimeError r) {
+						throw new RainRuntimeError(r.token, "Ensemble member " + i + ": " + r.getMessage());
+					}
+					if (cause instanceof RuntimeException r) throw r;
+					if (cause instanceof Error err) throw err;
+					throw new RainRuntimeError(paren, "Ensemble member " + i + " failed: " + cause);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RainRuntimeError(paren, "Ensemble interrupted.");
+		}
+		return out;
+	}
+
+	// Independent, reproducible stream per member
+	private static long memberSeed(long seed, int i) {
+		return seed ^ (0x9E3779B97F4A7C15L * (i + 1));
+	}
+
+	// Volume[][]: one history per registered body, in registry order
+	@SuppressWarnings("unchecked")
+	private static List<Object> histories(Interpreter member) {
+		List<Object> registry = (List<Object>) member.globals.getLocal("__BODY_REGISTRY");
+		List<Object> out = new ArrayList<>(registry.size());
+		for (Object b : registry) {
+			out.add(((RainInstance) b).getField("__history"));
+		}
+		return out;
+	}
+
+	// Deep copy of runtime values, keeps sharing and cycles intact
+	private static final class Copier {
+		private final Map<Object, Object> memo = new IdentityHashMap<>();
+		private final Interpreter parent;
+		private final Interpreter member;
+
+		Copier(Interpreter parent, Interpreter member) {
+			this.parent = parent;
+			this.member = member;
+			memo.put(parent.globals, member.globals);
+		}
+
+		void copyGlobals() {
+			for (Map.Entry<String, Object> e : parent.globals.values.entrySet()) {
+				// Natives are stateless, keep the member's own
+				if (member.globals.hasLocal(e.getKey())) continue;
+				member.globals.define(e.getKey(), copy(e.getValue()));
+			}
+		}
+
+		Object copy(Object v) {
+			if (v == null || v instanceof NumericValue || v instanceof String || v instanceof Boolean) return v;
+			Object seen = memo.get(v);
+			if (seen != null) return seen;
+
+			if (v instanceof HistoryColumn h) {
+				HistoryColumn out = member.simulation.historyColumn(h.values());
+				memo.put(v, out);
+				return out;
+			}
+			if (v instanceof List<?> list) {
+				List<Object> out = new ArrayList<>(list.size());
+				memo.put(v, out);
+				for (Object o : list) out.add(copy(o));
+				return out;
+			}
+			if (v instanceof RainInstance inst) {
+				RainInstance out = new RainInstance((RainClass) copy(inst.klass));
+				memo.put(v, out);
+				for (Map.Entry<String, Object> e : inst.fields.entrySet()) out.defineField(e.getKey(), copy(e.getValue()));
+				return out;
+			}
+			if (v instanceof RainClass k) {
+				Map<String, RainFunction> methods = new HashMap<>();
+				RainClass out = new RainClass(k.name, copyEnv(k.closure), methods, k.fieldNames, k.fieldInits, k.ctor);
+				memo.put(v, out);
+				for (Map.Entry<String, RainFunction> e : k.methods.entrySet()) methods.put(e.getKey(), (RainFunction) copy(e.getValue()));
+				return out;
+			}
+			if (v instanceof RainFunction f) {
+				RainFunction out = new RainFunction(f.declaration, copyEnv(f.closure));
+				memo.put(v, out);
+				return out;
+			}
+			if (v instanceof OverloadSet set) {
+				OverloadSet out = new OverloadSet();
+				memo.put(v, out);
+				for (int i = 0; i < set.size(); i++) out.add((RainFunction) copy(set.get(i)));
+				return out;
+			}
+			// Native callables hold no state
+			return v;
+		}
+
+		private Environment copyEnv(Environment env) {
+			if (env == null) return null;
+			Object seen = memo.get(env);
+			if (seen != null) return (Environment) seen;
+			Environment out = new Environment(copyEnv(env.enclosing));
+			memo.put(env, out);
+			for (Map.Entry<String, Object> e : env.values.entrySet()) out.define(e.getKey(), copy(e.getValue()));
+			return out;
+		}
+	}
+}
@@ -3,7 +3,7 @@ import java.util.*;
 class Environment {
 	// Parent scope
 	final Environment enclosing;
-	private final Map<String, Object> values = new HashMap<>();
+	final Map<String, Object> values = new HashMap<>();
 
 	// Global scope
 	Environment() {
@@ -0,0 +1,54 @@
+import java.io.*;
+
+// Compile and runtime errors of one engine. Each is counted and handed to a listener, by default
+// "[line N] Error: message" on stderr.
+final class ErrorReporter {
+	interface Listener {
+		void error(int line, String message);
+
+		// Something that stops the engine working at all, like a missing standard library
+		default void fatal(String message) {
+			System.err.println("Fatal: " + message);
+		}
+	}
+
+	static final Listener STDERR = (line, message) -> System.err.println("[line " + line + "] Error: " + message);
+
+	// The same on another stream, a server client's stderr
+	static Listener printing(PrintStream err) {
+		return new Listener() {
+			@Override public void error(int line, String message) {
+				err.println("[line " + line + "] Error: " + message);
+			}
+			@Override public void fatal(String message) {
+				err.println("Fatal: " + message);
+			}
+		};
+	}
+
+	private final Listener listener;
+	// Ensemble members' errors are rethrown on the engine's thread, so only that thread reports
+	private int count = 0;
+
+	ErrorReporter(Listener listener) {
+		this.listener = listener;
+	}
+
+	void error(int line, String message) {
+		count++;
+		listener.error(line, message);
+	}
+
+	void fatal(String message) {
+		count++;
+		listener.fatal(message);
+	}
+
+	int count() {
+		return count;
+	}
+
+	void reset() {
+		count = 0;
+	}
+}
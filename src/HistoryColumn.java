@@ -0,0 +1,33 @@
+import java.util.*;
+
+// One body's per-day volumes, a view of its slot in the simulation's history store.
+// Scripts see it as a read-only Volume[] (Body.__history), values are boxed only when read.
+final class HistoryColumn extends AbstractList<Object> implements RandomAccess {
+	final HistoryStore store;
+	final int slot;
+
+	HistoryColumn(HistoryStore store, int slot) {
+		this.store = store;
+		this.slot = slot;
+	}
+
+	double value(int i) {
+		return store.read(slot, i);
+	}
+
+	double[] values() {
+		double[] out = new double[size()];
+		for (int i = 0; i < out.length; i++) out[i] = store.read(slot, i);
+		return out;
+	}
+
+	@Override
+	public Object get(int i) {
+		return new NumericValue(Type.volume(), value(i));
+	}
+
+	@Override
+	public int size() {
+		return store.length(slot);
+	}
+}
@@ -0,0 +1,183 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+
+// Columnar binary export of simulation history, written by export_history() and read back here.
+// Everything is little-endian:
+//   header    "RAINHIST", u32 version, u32 bodies, u32 days, u32 edges, u64 offset of the columns
+//   lengths   u32 per body, days of history it recorded
+//   areas     f64 per body, m2
+//   edges     u32 parent[edges], u32 child[edges], f64 rate[edges] (negative = unlimited)
+//   labels    per body u32 byte length then UTF-8 bytes, one after another with no padding
+//   padding   zero bytes up to the columns offset, the next multiple of 8
+//   columns   f64[days] per body in registry order, NaN after its own length
+final class HistoryFile {
+	static final int VERSION = 1;
+	private static final byte[] MAGIC = "RAINHIST".getBytes(StandardCharsets.US_ASCII);
+	private static final int HEADER_BYTES = 32;
+	// Columns are mapped for writing in windows of at most this size
+	private static final long WINDOW_BYTES = 1L << 30;
+
+	final int bodies;
+	final int days;
+	final String[] labels;
+	final double[] areas;
+	final int[] lengths;
+	final int[] edgeParent;
+	final int[] edgeChild;
+	final double[] edgeRate;
+
+	private final FileChannel channel;
+	private final long columnsOffset;
+	private final DoubleBuffer[] columns;
+
+	private HistoryFile(FileChannel channel, int bodies, int days, int edges, long columnsOffset) {
+		this.channel = channel;
+		this.bodies = bodies;
+		this.days = days;
+		this.columnsOffset = columnsOffset;
+		labels = new String[bodies];
+		areas = new double[bodies];
+		lengths = new int[bodies];
+		edgeParent = new int[edges];
+		edgeChild = new int[edges];
+		edgeRate = new double[edges];
+		columns = new DoubleBuffer[bodies];
+	}
+
+	// Read-only view of a body's recorded days, mapped straight from the file
+	DoubleBuffer column(int body) throws IOException {
+		if (columns[body] == null) {
+			long at = columnsOffset + (long) body * days * Double.BYTES;
+			ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, at, (long) lengths[body] * Double.BYTES);
+			columns[body] = mapped.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+		}
+		return columns[body].duplicate();
+	}
+
+	double value(int body, int day) throws IOException {
+		Objects.checkIndex(day, lengths[body]);
+		return column(body).get(day);
+	}
+
+	static HistoryFile open(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, header, 0);
+			byte[] magic = new byte[MAGIC.length];
+			header.get(magic);
+			if (!Arrays.equals(magic, MAGIC)) throw new IOException("Not a RainLang history file: " + path);
+			int version = header.getInt();
+			if (version != VERSION) throw new IOException("Unsupported history file version " + version);
+			int bodies = header.getInt();
+			int days = header.getInt();
+			int edges = header.getInt();
+			long columnsOffset = header.getLong();
+
+			HistoryFile file = new HistoryFile(channel, bodies, days, edges, columnsOffset);
+			ByteBuffer meta = ByteBuffer.allocate((int) (columnsOffset - HEADER_BYTES)).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, meta, HEADER_BYTES);
+			for (int i = 0; i < bodies; i++) file.lengths[i] = meta.getInt();
+			for (int i = 0; i < bodies; i++) file.areas[i] = meta.getDouble();
+			for (int e = 0; e < edges; e++) file.edgeParent[e] = meta.getInt();
+			for (int e = 0; e < edges; e++) file.edgeChild[e] = meta.getInt();
+			for (int e = 0; e < edges; e++) file.edgeRate[e] = meta.getDouble();
+			for (int i = 0; i < bodies; i++) {
+				byte[] label = new byte[meta.getInt()];
+				meta.get(label);
+				file.labels[i] = new String(label, StandardCharsets.UTF_8);
+			}
+			return file;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	void close() throws IOException {
+		channel.close();
+	}
+
+	// Export every body in registry order
+	static void write(Path path, List<RainInstance> registry) throws IOException {
+		int n = registry.size();
+		Map<RainInstance, Integer> index = new IdentityHashMap<>();
+		for (int i = 0; i < n; i++) index.put(registry.get(i), i);
+
+		int days = 0;
+		int[] lengths = new int[n];
+		byte[][] labels = new byte[n][];
+		List<Object> histories = new ArrayList<>(n);
+		int metaBytes = 0;
+		List<int[]> edges = new ArrayList<>();
+		List<Double> rates = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			RainInstance b = registry.get(i);
+			List<?> history = (List<?>) b.getField("__history");
+			histories.add(history);
+			lengths[i] = history.size();
+			days = Math.max(days, lengths[i]);
+			labels[i] = ((String) b.getField("label")).getBytes(StandardCharsets.UTF_8);
+			metaBytes += Integer.BYTES + labels[i].length;
+
+			List<?> outflows = (List<?>) b.getField("outflows");
+			List<?> outflowRates = (List<?>) b.getField("outflow_rates");
+			for (int e = 0; e < outflows.size(); e++) {
+				Integer child = index.get(outflows.get(e));
+				if (child == null) continue;
+				edges.add(new int[] { i, child });
+				rates.add(((NumericValue) outflowRates.get(e)).value);
+			}
+		}
+		metaBytes += n * (Integer.BYTES + Double.BYTES) + edges.size() * (2 * Integer.BYTES + Double.BYTES);
+		long columnsOffset = (HEADER_BYTES + metaBytes + 7) & ~7L;
+
+		ByteBuffer meta = ByteBuffer.allocate((int) columnsOffset).order(ByteOrder.LITTLE_ENDIAN);
+		meta.put(MAGIC).putInt(VERSION).putInt(n).putInt(days).putInt(edges.size()).putLong(columnsOffset);
+		for (int len : lengths) meta.putInt(len);
+		for (RainInstance b : registry) meta.putDouble(((NumericValue) b.getField("area")).value);
+		for (int[] e : edges) meta.putInt(e[0]);
+		for (int[] e : edges) meta.putInt(e[1]);
+		for (double r : rates) meta.putDouble(r);
+		for (byte[] label : labels) meta.putInt(label.length).put(label);
+		meta.position(0);
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			while (meta.hasRemaining()) channel.write(meta);
+			long columnBytes = (long) days * Double.BYTES;
+			if (columnBytes == 0) return;
+			if (columnBytes > WINDOW_BYTES) throw new IOException("History too long to export (" + days + " days)");
+
+			// Columns are copied straight into the mapped file, a window of whole columns at a time
+			int perWindow = (int) Math.min(n, WINDOW_BYTES / columnBytes);
+			for (int from = 0; from < n; from += perWindow) {
+				int to = Math.min(n, from + perWindow);
+				MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_WRITE,
+					columnsOffset + from * columnBytes, (to - from) * columnBytes);
+				DoubleBuffer out = window.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+				for (int i = from; i < to; i++) {
+					out.position((i - from) * days);
+					Object h = histories.get(i);
+					if (h instanceof HistoryColumn column) {
+						column.store.copyTo(column.slot, out);
+					} else {
+						for (Object v : (List<?>) h) out.put(((NumericValue) v).value);
+					}
+					while (out.position() < (i - from + 1) * days) out.put(Double.NaN);
+				}
+			}
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long at) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, at + buffer.position()) < 0) throw new EOFException("Truncated history file");
+		}
+		buffer.flip();
+	}
+}
@@ -0,0 +1,43 @@
+import java.io.*;
+import java.nio.*;
+
+// Backing storage for per-body simulation history. Each body owns a slot, and the engine appends
+// one value per live slot after every simulated day. Scripts read it through HistoryColumn.
+// Closed with the engine that owns it.
+interface HistoryStore extends Closeable {
+	// A new, empty column
+	int open();
+
+	// A new column starting with a copy of values
+	int open(double[] values);
+
+	// One simulated day: values[i] is appended to slots[i], for i < n
+	void append(int[] slots, double[] values, int n);
+
+	// The same day appended 'times' times, for stretches where nothing changes
+	default void appendRepeated(int[] slots, double[] values, int n, long times) {
+		for (long t = 0; t < times; t++) append(slots, values, n);
+	}
+
+	// The slot's body is gone and records no more days. What it holds stays readable, for any
+	// script still holding its column, but the store may give its room to later slots.
+	default void release(int slot) {
+	}
+
+	int length(int slot);
+
+	// Heap bytes holding the slot's values, for memory_report()
+	long heapBytes(int slot);
+
+	double read(int slot, int index);
+
+	// Bulk copy of a whole column into dst at its position
+	default void copyTo(int slot, DoubleBuffer dst) {
+		for (int i = 0, n = length(slot); i < n; i++) dst.put(read(slot, i));
+	}
+
+	// Release files and mappings, nothing to do for history on the heap
+	@Override
+	default void close() throws IOException {
+	}
+}
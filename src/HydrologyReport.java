@@ -0,0 +1,168 @@
+import java.io.*;
+import java.util.*;
+
+// Native renderer behind the stdlib's hydrology_report(). Column widths come from one pass that
+// formats every cell into a scratch buffer, then rows are streamed straight to the writer,
+// so the table is never held in memory and no per-cell strings are kept.
+final class HydrologyReport {
+	private static final String SEP = " | ";
+	private static final String[] UNITS = {"TL", "GL", "ML", "kL", "L"};
+	private static final double[] DIVISORS = {1_000_000_000_000.0, 1_000_000_000.0, 1_000_000.0, 1_000.0, 1.0};
+
+	private final List<RainInstance> bodies;
+	// History per body, columns are read in place and anything else a script assigned is read as a list
+	private final HistoryColumn[] columns;
+	private final List<Object>[] lists;
+	private final StringBuilder cell = new StringBuilder();
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private HydrologyReport(List<RainInstance> bodies) {
+		this.bodies = bodies;
+		columns = new HistoryColumn[bodies.size()];
+		lists = new List[bodies.size()];
+		for (int i = 0; i < columns.length; i++) {
+			Object h = bodies.get(i).getField("__history");
+			if (h instanceof HistoryColumn column) columns[i] = column;
+			else lists[i] = (List<Object>) h;
+		}
+	}
+
+	// Days [from, to) of the given bodies, to < 0 means through the last recorded day
+	static void write(Writer out, List<RainInstance> bodies, long from, long to) throws IOException {
+		RainEvents.Report event = RainEvents.recording() ? new RainEvents.Report() : null;
+		long days = new HydrologyReport(bodies).render(out, from, to);
+		if (event != null && event.shouldCommit()) {
+			event.bodies = bodies.size();
+			event.from = from;
+			event.days = days;
+			event.commit();
+		}
+	}
+
+	// Rows written
+	private long render(Writer out, long from, long to) throws IOException {
+		int n = bodies.size();
+		int maxDays = 0;
+		for (int i = 0; i < n; i++) maxDays = Math.max(maxDays, length(i));
+		// Avoid degenerate "Day -1" widths
+		if (maxDays <= 0) maxDays = 1;
+		if (to < 0 || to > maxDays) to = maxDays;
+		if (from > to) from = to;
+
+		String[] labels = new String[n];
+		int[] widths = new int[n];
+		for (int i = 0; i < n; i++) {
+			String label = (String) bodies.get(i).getField("label");
+			labels[i] = label.isEmpty() ? "Body" : label;
+			int w = labels[i].length();
+			for (long d = from; d < to; d++) w = Math.max(w, cell(i, (int) d).length());
+			widths[i] = w;
+		}
+
+		int dayWidth = ("Day " + (to > from ? to - 1 : from) + ":").length();
+		int rowLength = dayWidth + 3 * n;
+		for (int w : widths) rowLength += w;
+		String nl = System.lineSeparator();
+		String rule = "-".repeat(rowLength);
+
+		out.write(rule); out.write(nl);
+		out.write("Hydrology Report");
+		out.write(" ".repeat(Math.max(0, rowLength - 2 - "Hydrology Report".length()))); out.write(nl);
+		out.write(rule); out.write(nl);
+
+		pad(out, "Day:", dayWidth);
+		out.write(SEP);
+		for (int i = 0; i < n; i++) {
+			pad(out, labels[i], widths[i]);
+			if (i + 1 < n) out.write(SEP);
+		}
+		out.write(nl);
+
+		out.write("-".repeat(dayWidth));
+		out.write("-+-");
+		for (int i = 0; i < n; i++) {
+			out.write("-".repeat(widths[i]));
+			if (i + 1 < n) out.write("-+-");
+		}
+		out.write(nl);
+
+		for (long d = from; d < to; d++) {
+			pad(out, "Day " + d + ":", dayWidth);
+			out.write(SEP);
+			for (int i = 0; i < n; i++) {
+				pad(out, cell(i, (int) d), widths[i]);
+				if (i + 1 < n) out.write(SEP);
+			}
+			out.write(nl);
+		}
+
+		out.write(rule); out.write(nl);
+		return to - from;
+	}
+
+	// "volume (+/-delta)" for body i on day d, in the scratch buffer
+	private CharSequence cell(int i, int d) {
+		int len = length(i);
+		double v = d < len ? value(i, d) : 0;
+		double delta = d > 0 && d < len ? value(i, d) - value(i, d - 1) : 0;
+		cell.setLength(0);
+		appendVolume(cell, v);
+		cell.append(" (");
+		if (delta >= 0) cell.append('+');
+		appendVolume(cell, delta);
+		cell.append(')');
+		return cell;
+	}
+
+	private int length(int i) {
+		return columns[i] != null ? columns[i].size() : lists[i].size();
+	}
+
+	private double value(int i, int d) {
+		return columns[i] != null ? columns[i].value(d) : ((NumericValue) lists[i].get(d)).value;
+	}
+
+	private static void pad(Writer out, CharSequence s, int width) throws IOException {
+		out.append(s);
+		for (int k = s.length(); k < width; k++) out.write(' ');
+	}
+
+	// Same text as the interpreter's display of a Volume
+	static void appendVolume(StringBuilder sb, double v) {
+		double av = Math.abs(v);
+		for (int i = 0; i < UNITS.length; i++) {
+			if (av >= DIVISORS[i] || i == UNITS.length - 1) {
+				appendNumber(sb, v / DIVISORS[i]);
+				sb.append(UNITS[i]);
+				return;
+			}
+		}
+	}
+
+	// Same text as Interpreter.formatNumber. Whole thousandths are written directly, values within
+	// rounding distance of a tie, or too large to scale exactly, go through String.format.
+	static void appendNumber(StringBuilder sb, double x) {
+		if (Double.isNaN(x) || Double.isInfinite(x)) {
+			sb.append(Interpreter.formatNumber(x));
+			return;
+		}
+		if (Math.abs(x) < 1e-12) x = 0.0;
+		double scaled = Math.abs(x) * 1000;
+		double frac = scaled - Math.floor(scaled);
+		if (scaled >= 1e9 || Math.abs(frac - 0.5) < 1e-6) {
+			sb.append(Interpreter.formatNumber(x));
+			return;
+		}
+		long m = Math.round(scaled);
+		if (x < 0) sb.append('-');
+		sb.append(m / 1000);
+		int f = (int) (m % 1000);
+		if (f == 0) return;
+		sb.append('.');
+		sb.append((char) ('0' + f / 100));
+		if (f % 100 == 0) return;
+		sb.append((char) ('0' + f / 10 % 10));
+		if (f % 10 == 0) return;
+		sb.append((char) ('0' + f % 10));
+	}
+}
@@ -1,16 +1,44 @@
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	final Environment globals = new Environment();
 	private Environment env = globals;
+	final Simulation simulation = new Simulation(this);
+	final CallResolution calls;
+	final ErrorReporter errors;
+	// Script output, print and friends go through here rather than System.out
+	OutputSink output;
+	// Set by --profile and --line-profile, shared with ensemble members
+	Profiler profiler;
+	LineProfiler lineProfiler;
+	// Relative paths given to checkpoint() and friends, the client's working directory under --server
+	Path directory = Paths.get("");
+	// Set by RainEngine.cancel() from any thread, shared with ensemble members
+	AtomicBoolean cancelled = new AtomicBoolean();
 
 	private boolean replMode = false;
 
-	public Interpreter() {
+	// Seeded so ensemble members can be reproduced
+	private long seed = System.nanoTime();
+	private SplittableRandom random = new SplittableRandom(seed);
+
+	Interpreter(CallResolution calls, OutputSink output, ErrorReporter errors) {
+		this.calls = calls;
+		this.output = output;
+		this.errors = errors;
 		Builtins.registerRuntime(globals);	
 	}
 
 	public void setReplMode(boolean enabled) { this.replMode = enabled; }
+	// Checked on every loop turn, function call and simulated day
+	void checkCancelled() {
+		if (cancelled.get()) throw new RainCancelled();
+	}
+	public void setOutput(OutputSink output) { this.output = output; }
+	// The scope running now, globals at the top level
+	Environment environment() { return env; }
 
 	public void interpret(List<Stmt> statements) {
 		try {
@@ -18,11 +46,19 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 				execute(stmt);
 			}
 		} catch (RainRuntimeError error) {
-			RainLang.error(error.token.line, error.getMessage());
+			errors.error(error.token.line, error.getMessage());
 		}
 	}
 	private void execute(Stmt stmt) {
-		stmt.accept(this);
+		if (lineProfiler == null || !lineProfiler.enter(stmt)) {
+			stmt.accept(this);
+			return;
+		}
+		try {
+			stmt.accept(this);
+		} finally {
+			lineProfiler.exit();
+		}
 	}
 	public void executeBlock(List<Stmt> statements, Environment newEnv) {
 		Environment previous = env;
@@ -130,7 +166,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		// Fallback: default to underlying toString
 		return n.toString();
 	}
-	private String formatNumber(double x) {
+	static String formatNumber(double x) {
 		if (Double.isNaN(x)) return "nan";
 		if (Double.isInfinite(x)) return x > 0 ? "inf" : "-inf";
 		if (Math.abs(x) < 1e-12) x = 0.0;
@@ -302,7 +338,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		}
 
 		if (callee instanceof OverloadSet set) {
-			CallResolution.Resolved r = CallResolution.get(expr);
+			CallResolution.Resolved r = calls.get(expr);
 			if (r == null)
 				throw new RainRuntimeError(expr.paren, "Internal error: unresolved overloaded call.");
 			if (r.slot < 0 || r.slot >= set.size())
@@ -321,6 +357,15 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			throw new RainRuntimeError(expr.paren, "Expected " + function.arity() + " arguments but got " + arguments.size() + ".");
 		}
 
+		// Functions and classes profile themselves, natives are timed here
+		if (profiler != null && !(function instanceof RainFunction) && !(function instanceof RainClass)) {
+			profiler.enter(function);
+			try {
+				return function.call(this, expr.paren, arguments);
+			} finally {
+				profiler.exit();
+			}
+		}
 		return function.call(this, expr.paren, arguments);
 	}
 	@SuppressWarnings("unchecked")
@@ -334,6 +379,10 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
 		if (object instanceof List<?> base) {
 			String m = expr.name.lexeme;
+			// Engine-owned arrays such as Body.__history can be read but not changed
+			if (base instanceof HistoryColumn && !m.equals("length")) {
+				throw new RainRuntimeError(expr.name, "Cannot call '" + m + "' on a read-only array.");
+			}
 			switch (m) {
 				case "length":
 					return new NumericValue(Type.val(), base.size());
@@ -436,6 +485,9 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	public Object visitIndexSetExpr(Expr.IndexSet expr) {
 		Object base = evaluate(expr.array);
 		List<Object> list = asArray(base, expr.bracket);
+		if (base instanceof HistoryColumn) {
+			throw new RainRuntimeError(expr.bracket, "Cannot assign into a read-only array.");
+		}
 		int i = asIndex(evaluate(expr.index), expr.bracket);
 		if (i < 0 || i >= list.size()) {
 			throw new RainRuntimeError(expr.bracket, "Index " + i + " out of bounds for length " + list.size() + ".");
@@ -538,6 +590,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitWhileStmt(Stmt.While stmt) {
 		while (isTruthy(evaluate(stmt.condition))) {
+			checkCancelled();
 			try {
 				execute(stmt.body);
 			} catch (RainContinue c) {
@@ -558,6 +611,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 				execute(stmt.initializer);
 			}
 			while (stmt.condition == null || isTruthy(evaluate(stmt.condition))) {
+				checkCancelled();
 				try {
 					execute(stmt.body);
 				} catch (RainContinue c) {
@@ -625,6 +679,15 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		return isTruthy(value);
 	}
 
+	long seed() { return seed; }
+
+	void seed(long seed) {
+		this.seed = seed;
+		this.random = new SplittableRandom(seed);
+	}
+
+	double nextRandom() { return random.nextDouble(); }
+
 	@Override
 	public Void visitBreakStmt(Stmt.Break stmt) {
 		throw new RainBreak();
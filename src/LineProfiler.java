@@ -0,0 +1,160 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+// --line-profile: executions and time per source line, for the script and the standard library alike,
+// written out as an annotated listing of each unit's source. Statements are counted on the line they
+// start on; blocks are left out so a loop's braces don't count as a second statement per iteration.
+final class LineProfiler {
+	// Filled in while units are compiled, before any of their statements run, and only read after that,
+	// so ensemble members can look statements up from their own threads
+	private final Map<Stmt, Line> lines = new IdentityHashMap<>();
+	private final List<Unit> units = new ArrayList<>();
+	private final ThreadLocal<Stack> stack = ThreadLocal.withInitial(Stack::new);
+
+	private static final class Unit {
+		final String name;
+		final String[] source;
+		final Line[] lines;
+
+		Unit(String name, String source) {
+			this.name = name;
+			this.source = source.split("\r?\n", -1);
+			this.lines = new Line[this.source.length];
+		}
+	}
+
+	private static final class Line {
+		final Unit unit;
+		final int number;
+		final LongAdder count = new LongAdder();
+		final LongAdder total = new LongAdder();
+		final LongAdder self = new LongAdder();
+
+		Line(Unit unit, int number) {
+			this.unit = unit;
+			this.number = number;
+		}
+	}
+
+	private static final class Frame {
+		Line line;
+		long start;
+		long inner;
+		// The line is already further down the stack, loops and recursion don't count its total twice
+		boolean nested;
+	}
+
+	private static final class Stack {
+		final List<Frame> frames = new ArrayList<>();
+		final Map<Line, Integer> active = new HashMap<>();
+		int depth = 0;
+	}
+
+	// Give every statement of a freshly parsed unit its line
+	void register(String name, String source, List<Stmt> program) {
+		Unit unit = new Unit(name, source);
+		units.add(unit);
+		for (Stmt s : program) register(unit, s);
+	}
+
+	private void register(Unit unit, Stmt stmt) {
+		if (stmt == null) return;
+		if (stmt instanceof Stmt.Block b) {
+			for (Stmt s : b.statements) register(unit, s);
+			return;
+		}
+		int n = stmt.line - 1;
+		if (n >= 0 && n < unit.lines.length) {
+			if (unit.lines[n] == null) unit.lines[n] = new Line(unit, stmt.line);
+			lines.put(stmt, unit.lines[n]);
+		}
+		if (stmt instanceof Stmt.Function f) {
+			for (Stmt s : f.body) register(unit, s);
+		} else if (stmt instanceof Stmt.ClassStmt c) {
+			for (Stmt m : c.members) {
+				if (m instanceof Stmt.Function f) for (Stmt s : f.body) register(unit, s);
+				else if (m instanceof Stmt.Constructor k) for (Stmt s : k.body) register(unit, s);
+			}
+		} else if (stmt instanceof Stmt.If i) {
+			register(unit, i.thenBranch);
+			register(unit, i.elseBranch);
+		} else if (stmt instanceof Stmt.While w) {
+			register(unit, w.body);
+		} else if (stmt instanceof Stmt.For f) {
+			register(unit, f.initializer);
+			register(unit, f.body);
+		}
+	}
+
+	// False if the statement isn't counted, then there is no exit() to match
+	boolean enter(Stmt stmt) {
+		Line line = lines.get(stmt);
+		if (line == null) return false;
+		Stack s = stack.get();
+		if (s.depth == s.frames.size()) s.frames.add(new Frame());
+		Frame f = s.frames.get(s.depth++);
+		f.line = line;
+		f.inner = 0;
+		f.nested = s.active.merge(line, 1, Integer::sum) > 1;
+		f.start = System.nanoTime();
+		return true;
+	}
+
+	void exit() {
+		long now = System.nanoTime();
+		Stack s = stack.get();
+		Frame f = s.frames.get(--s.depth);
+		long time = now - f.start;
+		Line line = f.line;
+		line.count.increment();
+		line.self.add(time - f.inner);
+		if (!f.nested) line.total.add(time);
+		if (s.active.merge(line, -1, Integer::sum) == 0) s.active.remove(line);
+		if (s.depth > 0) s.frames.get(s.depth - 1).inner += time;
+		f.line = null;
+	}
+
+	// The hottest lines, then every unit that ran anything as a listing with per-line counts and times.
+	// Percentages are of the self time of all counted lines.
+	void write(PrintStream out) {
+		List<Line> ran = new ArrayList<>();
+		for (Unit u : units) {
+			for (Line l : u.lines) if (l != null && l.count.sum() > 0) ran.add(l);
+		}
+		long all = 0;
+		for (Line l : ran) all += l.self.sum();
+
+		ran.sort(Comparator.comparingLong((Line l) -> l.self.sum()).reversed());
+		out.println();
+		out.printf(Locale.ROOT, "Line profile: %.1f ms in statements, hottest lines by self time%n", all / 1e6);
+		out.printf(Locale.ROOT, "%12s %12s %7s %12s  %s%n", "count", "self ms", "self %", "total ms", "line");
+		for (Line l : ran.subList(0, Math.min(20, ran.size()))) {
+			out.printf(Locale.ROOT, "%s  %s:%d  %s%n", columns(l, all), l.unit.name, l.number, l.unit.source[l.number - 1].strip());
+		}
+
+		for (Unit u : units) {
+			boolean any = false;
+			for (Line l : u.lines) any |= l != null && l.count.sum() > 0;
+			if (!any) continue;
+			out.println();
+			out.println("== " + u.name);
+			out.printf(Locale.ROOT, "%12s %12s %7s %12s |%n", "count", "self ms", "self %", "total ms");
+			int width = Integer.toString(u.source.length).length();
+			for (int i = 0; i < u.source.length; i++) {
+				Line l = u.lines[i];
+				String counts = l == null || l.count.sum() == 0 ? BLANK : columns(l, all);
+				out.printf(Locale.ROOT, "%s | %" + width + "d  %s%n", counts, i + 1, u.source[i]);
+			}
+		}
+		out.flush();
+	}
+
+	private static final String BLANK = " ".repeat(46);
+
+	private static String columns(Line l, long all) {
+		long self = l.self.sum();
+		return String.format(Locale.ROOT, "%12d %12.3f %6.1f%% %12.3f",
+			l.count.sum(), self / 1e6, all == 0 ? 0.0 : 100.0 * self / all, l.total.sum() / 1e6);
+	}
+}
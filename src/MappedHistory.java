@@ -0,0 +1,203 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+// History spilled to a memory-mapped file, for runs whose history would not fit on the heap.
+// Each simulated day is one block of little-endian doubles indexed by lane (NaN where a lane
+// has no value that day), appended to fixed-size mapped segments as the file grows.
+// A slot takes a lane when it first records a day and gives it up when released, so blocks are
+// as wide as the most slots recording at once rather than every slot ever opened.
+// The most recent days are also kept on the heap, older ones are read back from the mapping.
+final class MappedHistory implements HistoryStore {
+	private static final long SEGMENT_BYTES = 64L << 20;
+	private static final int HOT_DAYS = 64;
+
+	private final FileChannel channel;
+	// The file, if it is ours to delete on close
+	private final Path temporary;
+
+	// Mapped segments, segment i covers file bytes segmentStart[i] .. + segments.get(i).capacity()
+	private final List<ByteBuffer> segments = new ArrayList<>();
+	private long[] segmentStart = new long[4];
+	private long end = 0;
+
+	// Per day block: segment and byte offset within it
+	private int[] blockSegment = new int[1024];
+	private int[] blockOffset = new int[1024];
+	private int blocks = 0;
+
+	// Per slot: first block holding it, its lane in every block from there on, values so far,
+	// and values it started with off the file
+	private int[] first = new int[16];
+	private int[] lane = new int[16];
+	private int[] length = new int[16];
+	private double[][] prefix = new double[16][];
+	private int slots = 0;
+	// Lanes taken by slots still recording, and those slots
+	private final BitSet lanes = new BitSet();
+	private final BitSet recording = new BitSet();
+
+	// The last HOT_DAYS blocks, by block number modulo HOT_DAYS
+	private final double[][] hot = new double[HOT_DAYS][];
+
+	MappedHistory(Path file) throws IOException {
+		this(file, null);
+	}
+
+	private MappedHistory(Path file, Path temporary) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+			StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.temporary = temporary;
+	}
+
+	// Backed by a temporary file that is removed on close, or on exit if it can't be then
+	static MappedHistory temporary() throws IOException {
+		Path file = Files.createTempFile("rainlang-history", ".bin");
+		file.toFile().deleteOnExit();
+		return new MappedHistory(file, file);
+	}
+
+	@Override
+	public int open() {
+		if (slots == first.length) {
+			first = Arrays.copyOf(first, slots * 2);
+			lane = Arrays.copyOf(lane, slots * 2);
+			length = Arrays.copyOf(length, slots * 2);
+			prefix = Arrays.copyOf(prefix, slots * 2);
+		}
+		first[slots] = -1;
+		return slots++;
+	}
+
+	@Override
+	public int open(double[] values) {
+		int slot = open();
+		if (values.length > 0) prefix[slot] = values.clone();
+		length[slot] = values.length;
+		return slot;
+	}
+
+	@Override
+	public void append(int[] slots, double[] values, int n) {
+		double[] block = block(slots, values, n, 1);
+		hot[blocks % HOT_DAYS] = block;
+		write(block);
+	}
+
+	// One block written 'times' times, the hot days share it as it is never changed
+	@Override
+	public void appendRepeated(int[] slots, double[] values, int n, long times) {
+		if (times <= 0) return;
+		double[] block = block(slots, values, n, Math.toIntExact(times));
+		for (long t = 0; t < times; t++) {
+			hot[blocks % HOT_DAYS] = block;
+			write(block);
+		}
+	}
+
+	// The next block, counting 'days' more values for each slot in it
+	private double[] block(int[] slots, double[] values, int n, int days) {
+		for (int i = 0; i < n; i++) {
+			int s = slots[i];
+			if (first[s] < 0) {
+				first[s] = blocks - (prefix[s] == null ? 0 : prefix[s].length);
+				lane[s] = lanes.nextClearBit(0);
+				lanes.set(lane[s]);
+				recording.set(s);
+			}
+			length[s] = Math.addExact(length[s], days);
+		}
+		double[] block = new double[lanes.length()];
+		Arrays.fill(block, Double.NaN);
+		for (int i = 0; i < n; i++) block[lane[slots[i]]] = values[i];
+		return block;
+	}
+
+	// Frees the slot's lane for the next slot to start recording, its values stay readable
+	@Override
+	public void release(int slot) {
+		if (recording.get(slot)) {
+			recording.clear(slot);
+			lanes.clear(lane[slot]);
+		}
+	}
+
+	@Override
+	public int length(int slot) {
+		return length[slot];
+	}
+
+	// Its share of the recent days kept on the heap, the rest is in the file
+	@Override
+	public long heapBytes(int slot) {
+		long bytes = 8L * Math.min(length[slot], HOT_DAYS);
+		return prefix[slot] == null ? bytes : bytes + MemoryReport.array(prefix[slot].length, 8);
+	}
+
+	@Override
+	public double read(int slot, int index) {
+		Objects.checkIndex(index, length[slot]);
+		double[] lead = prefix[slot];
+		if (lead != null && index < lead.length) return lead[index];
+		int b = first[slot] + index;
+		if (b >= blocks - HOT_DAYS) return hot[b % HOT_DAYS][lane[slot]];
+		return segments.get(blockSegment[b]).getDouble(blockOffset[b] + lane[slot] * Double.BYTES);
+	}
+
+	// Where the next day goes in the file, the bytes written so far until a second segment is mapped
+	long fileBytes() {
+		return end;
+	}
+
+	// The mappings go once nothing refers to them, a long-running server can't wait for exit
+	@Override
+	public void close() throws IOException {
+		channel.close();
+		segments.clear();
+		Arrays.fill(hot, null);
+		if (temporary == null) return;
+		try {
+			Files.deleteIfExists(temporary);
+		} catch (IOException e) {
+			// Windows won't delete a file that is still mapped, deleteOnExit gets it
+		}
+	}
+
+	private void write(double[] block) {
+		int bytes = block.length * Double.BYTES;
+		int seg = segments.size() - 1;
+		if (seg < 0 || end - segmentStart[seg] + bytes > segments.get(seg).capacity()) seg = grow(bytes);
+		ByteBuffer buffer = segments.get(seg);
+		int offset = (int) (end - segmentStart[seg]);
+		buffer.asDoubleBuffer().put(offset / Double.BYTES, block);
+
+		if (blocks == blockSegment.length) {
+			blockSegment = Arrays.copyOf(blockSegment, blocks * 2);
+			blockOffset = Arrays.copyOf(blockOffset, blocks * 2);
+		}
+		blockSegment[blocks] = seg;
+		blockOffset[blocks] = offset;
+		blocks++;
+		end += bytes;
+	}
+
+	// Map a new segment at the end of the file, big enough for at least one block
+	private int grow(int bytes) {
+		int seg = segments.size();
+		long start = seg == 0 ? 0 : segmentStart[seg - 1] + segments.get(seg - 1).capacity();
+		long size = Math.max(SEGMENT_BYTES, bytes);
+		try {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			segments.add(buffer);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not extend history file: " + e.getMessage(), e);
+		}
+		if (seg == segmentStart.length) segmentStart = Arrays.copyOf(segmentStart, seg * 2);
+		segmentStart[seg] = start;
+		end = start;
+		return seg;
+	}
+}
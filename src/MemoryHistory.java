@@ -0,0 +1,76 @@
+import java.nio.*;
+import java.util.*;
+
+// Default history backend, one contiguous double[] per body on the heap
+final class MemoryHistory implements HistoryStore {
+	private double[][] columns = new double[16][];
+	private int[] sizes = new int[16];
+	private int slots = 0;
+
+	@Override
+	public int open() {
+		if (slots == columns.length) {
+			columns = Arrays.copyOf(columns, slots * 2);
+			sizes = Arrays.copyOf(sizes, slots * 2);
+		}
+		columns[slots] = new double[16];
+		return slots++;
+	}
+
+	@Override
+	public int open(double[] values) {
+		int slot = open();
+		columns[slot] = Arrays.copyOf(values, Math.max(values.length, 16));
+		sizes[slot] = values.length;
+		return slot;
+	}
+
+	@Override
+	public void append(int[] slots, double[] values, int n) {
+		for (int i = 0; i < n; i++) {
+			int s = slots[i];
+			double[] column = columns[s];
+			if (sizes[s] == column.length) column = columns[s] = Arrays.copyOf(column, Math.max(column.length * 2, 16));
+			column[sizes[s]++] = values[i];
+		}
+	}
+
+	@Override
+	public void appendRepeated(int[] slots, double[] values, int n, long times) {
+		int k = Math.toIntExact(times);
+		for (int i = 0; i < n; i++) {
+			int s = slots[i];
+			int end = Math.addExact(sizes[s], k);
+			if (end > columns[s].length) columns[s] = Arrays.copyOf(columns[s], Math.max(end, columns[s].length * 2));
+			Arrays.fill(columns[s], sizes[s], end, values[i]);
+			sizes[s] = end;
+		}
+	}
+
+	// Nothing more will be added, drop the room kept for growing
+	@Override
+	public void release(int slot) {
+		columns[slot] = Arrays.copyOf(columns[slot], sizes[slot]);
+	}
+
+	@Override
+	public void copyTo(int slot, DoubleBuffer dst) {
+		dst.put(columns[slot], 0, sizes[slot]);
+	}
+
+	@Override
+	public int length(int slot) {
+		return sizes[slot];
+	}
+
+	@Override
+	public long heapBytes(int slot) {
+		return MemoryReport.array(columns[slot].length, 8);
+	}
+
+	@Override
+	public double read(int slot, int index) {
+		Objects.checkIndex(index, sizes[slot]);
+		return columns[slot][index];
+	}
+}
@@ -0,0 +1,178 @@
+import java.io.*;
+import java.util.*;
+
+// memory_report() and --memory-report: how many objects the script can reach from the interpreter's
+// scopes and roughly how much heap they hold, by RainLang class, by array element type and for
+// strings, next to what the simulation engine holds natively. Boxed numbers are counted with the
+// instance, array or scope that first reaches them; instances, arrays and strings get rows of their own.
+// Sizes assume a 64-bit JVM with compressed references, so they are estimates.
+final class MemoryReport {
+	private static final int HEADER = 12;
+	private static final int REF = 4;
+
+	private static final class Row {
+		final String name;
+		final boolean engine;
+		long count;
+		long bytes;
+
+		Row(String name, boolean engine) {
+			this.name = name;
+			this.engine = engine;
+		}
+	}
+
+	private final Map<String, Row> rows = new HashMap<>();
+	private final Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+	// Walked with a queue rather than recursion, body networks link thousands of bodies deep
+	private final ArrayDeque<Object> pending = new ArrayDeque<>();
+
+	// Everything reachable from env and the globals, plus the engine's own state
+	static MemoryReport of(Interpreter interpreter, Environment env) {
+		MemoryReport r = new MemoryReport();
+		r.reach(env);
+		r.reach(interpreter.globals);
+		while (!r.pending.isEmpty()) r.visit(r.pending.poll());
+		interpreter.simulation.account(r);
+		return r;
+	}
+
+	// Native state the script can't see, added by the engine
+	void add(String name, long count, long bytes) {
+		Row row = rows.computeIfAbsent(name + " (native)", n -> new Row(n, true));
+		row.count += count;
+		row.bytes += bytes;
+	}
+
+	private void count(String name, long bytes) {
+		Row row = rows.computeIfAbsent(name, n -> new Row(n, false));
+		row.count++;
+		row.bytes += bytes;
+	}
+
+	private void reach(Object v) {
+		if (v != null && !(v instanceof Boolean) && seen.add(v)) pending.add(v);
+	}
+
+	private void visit(Object v) {
+		if (v instanceof String s) {
+			count("String", string(s));
+		} else if (v instanceof HistoryColumn h) {
+			count("Volume[] (__history)", object(REF + 4) + h.store.heapBytes(h.slot));
+		} else if (v instanceof List<?> list) {
+			long bytes = object(3 * 4) + array(list.size(), REF);
+			for (Object o : list) bytes += hold(o);
+			count(arrayName(list), bytes);
+		} else if (v instanceof RainInstance inst) {
+			long bytes = object(2 * REF) + map(inst.fields.size());
+			for (Object o : inst.fields.values()) bytes += hold(o);
+			count(inst.klass.name, bytes);
+		} else if (v instanceof Environment env) {
+			long bytes = object(2 * REF) + map(env.values.size());
+			for (Object o : env.values.values()) bytes += hold(o);
+			count("scope", bytes);
+			reach(env.enclosing);
+		} else if (v instanceof RainFunction fn) {
+			count("function", object(2 * REF));
+			reach(fn.closure);
+		} else if (v instanceof RainClass k) {
+			count("class", object(6 * REF) + map(k.methods.size()));
+			reach(k.closure);
+			for (RainFunction m : k.methods.values()) reach(m);
+		} else if (v instanceof OverloadSet set) {
+			count("function", object(REF) + object(3 * 4) + array(set.size(), REF));
+			for (int i = 0; i < set.size(); i++) reach(set.get(i));
+		}
+		// Natives hold no script state
+	}
+
+	// Bytes a container owns for one of its values, boxed numbers are owned by whoever reaches them first
+	private long hold(Object v) {
+		if (v instanceof NumericValue n) {
+			if (!seen.add(n)) return 0;
+			// Most numbers carry a Type of their own
+			return seen.add(n.type) ? number() + object(5 * REF) : number();
+		}
+		reach(v);
+		return 0;
+	}
+
+	// Body[], Volume[][], String[], and [] while it's empty
+	private static String arrayName(List<?> list) {
+		for (Object o : list) {
+			if (o == null) continue;
+			if (o instanceof HistoryColumn) return "Volume[][]";
+			if (o instanceof List<?> inner) return arrayName(inner) + "[]";
+			return elementName(o) + "[]";
+		}
+		return "[]";
+	}
+
+	private static String elementName(Object o) {
+		if (o instanceof NumericValue n) {
+			return switch (n.type.kind) {
+				case VOLUME -> "Volume";
+				case RAIN -> "Rain";
+				case AREA -> "Area";
+				default -> "Val";
+			};
+		}
+		if (o instanceof String) return "String";
+		if (o instanceof Boolean) return "Bool";
+		if (o instanceof RainInstance i) return i.klass.name;
+		return "function";
+	}
+
+	static long object(int fields) {
+		return align(HEADER + fields);
+	}
+
+	static long array(long length, int element) {
+		return align(HEADER + 4 + length * element);
+	}
+
+	private static long number() {
+		return object(REF + 8);
+	}
+
+	// Latin-1 strings take a byte a character, anything wider two
+	private static long string(String s) {
+		int width = 1;
+		for (int i = 0; i < s.length() && width == 1; i++) if (s.charAt(i) > 0xFF) width = 2;
+		return object(REF + 4 + 1 + 1) + array((long) s.length() * width, 1);
+	}
+
+	// HashMap with its table at the default load factor and one node per entry
+	private static long map(int size) {
+		int table = 0;
+		if (size > 0) table = Math.max(16, Integer.highestOneBit((int) Math.ceil(size / 0.75) - 1) << 1);
+		return object(4 * 4 + 2 * REF + 4) + (table == 0 ? 0 : array(table, REF)) + size * object(4 + 3 * REF);
+	}
+
+	private static long align(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
+
+	// Rows by bytes, most first, script values and then the engine's
+	void write(Writer out) throws IOException {
+		List<Row> sorted = new ArrayList<>(rows.values());
+		sorted.sort(Comparator.comparing((Row r) -> r.engine).thenComparing(Comparator.comparingLong((Row r) -> r.bytes).reversed()));
+		long script = 0, engine = 0, objects = 0;
+		for (Row r : sorted) {
+			if (r.engine) engine += r.bytes;
+			else {
+				script += r.bytes;
+				objects += r.count;
+			}
+		}
+		long all = script + engine;
+		String nl = System.lineSeparator();
+		out.write(String.format(Locale.ROOT, "Memory: %.1f KB in %d script values, %.1f KB held by the engine (estimated)%s",
+			script / 1024.0, objects, engine / 1024.0, nl));
+		out.write(String.format(Locale.ROOT, "%12s %14s %7s  %s%s", "count", "KB", "%", "kind", nl));
+		for (Row r : sorted) {
+			out.write(String.format(Locale.ROOT, "%12d %14.1f %6.1f%%  %s%s",
+				r.count, r.bytes / 1024.0, all == 0 ? 0.0 : 100.0 * r.bytes / all, r.name, nl));
+		}
+	}
+}
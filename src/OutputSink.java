@@ -0,0 +1,135 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+// Where script output goes. Text is buffered and encoded in bulk, and only written out when the
+// flush policy says so, rather than one synchronised, flushing System.out call per print.
+// Shared by an interpreter and its ensemble members, so every method locks.
+final class OutputSink extends Writer {
+	enum Policy {
+		// After every line, for interactive use
+		LINE,
+		// Whenever the buffer reaches its limit
+		SIZE,
+		// Only on flush() and at the end of the run
+		EXIT
+	}
+
+	static final int DEFAULT_LIMIT = 1 << 16;
+	private static final String NEWLINE = System.lineSeparator();
+
+	private final WritableByteChannel channel;
+	private final CharsetEncoder encoder;
+	private final boolean ownsChannel;
+	// The stream the channel writes through, flushed with the sink, null for files
+	private final OutputStream stream;
+	private final StringBuilder buffer = new StringBuilder();
+	private final ByteBuffer bytes = ByteBuffer.allocate(DEFAULT_LIMIT);
+	private Policy policy = Policy.SIZE;
+	private int limit = DEFAULT_LIMIT;
+
+	private OutputSink(WritableByteChannel channel, Charset charset, boolean ownsChannel, OutputStream stream) {
+		this.channel = channel;
+		this.encoder = charset.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.ownsChannel = ownsChannel;
+		this.stream = stream;
+	}
+
+	static OutputSink stdout() {
+		return new OutputSink(Channels.newChannel(System.out), System.out.charset(), false, System.out);
+	}
+
+	// An embedder's stream, left open when the sink is closed
+	static OutputSink stream(OutputStream out, Charset charset) {
+		return new OutputSink(Channels.newChannel(out), charset, false, out);
+	}
+
+	static OutputSink file(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		return new OutputSink(channel, Charset.defaultCharset(), true, null);
+	}
+
+	synchronized void setPolicy(Policy policy, int limit) {
+		this.policy = policy;
+		this.limit = limit;
+	}
+
+	synchronized void print(String s) {
+		buffer.append(s);
+		written(s.indexOf('\n') >= 0);
+	}
+
+	synchronized void println(String s) {
+		buffer.append(s).append(NEWLINE);
+		written(true);
+	}
+
+	@Override
+	public synchronized void write(char[] cbuf, int off, int len) {
+		buffer.append(cbuf, off, len);
+		written(false);
+	}
+
+	@Override
+	public synchronized void write(String s, int off, int len) {
+		buffer.append(s, off, off + len);
+		int nl = s.indexOf('\n', off);
+		written(nl >= 0 && nl < off + len);
+	}
+
+	@Override
+	public synchronized void write(int c) {
+		buffer.append((char) c);
+		written(c == '\n');
+	}
+
+	@Override
+	public synchronized Writer append(CharSequence csq) {
+		buffer.append(csq);
+		written(false);
+		return this;
+	}
+
+	// Apply the policy after text was added, line is true if it ended a line
+	private void written(boolean line) {
+		if (policy == Policy.LINE ? line : policy == Policy.SIZE && buffer.length() >= limit) flush();
+	}
+
+	// Encode and write everything buffered so far
+	@Override
+	public synchronized void flush() {
+		if (buffer.length() == 0) return;
+		CharBuffer chars = CharBuffer.wrap(buffer);
+		encoder.reset();
+		try {
+			while (true) {
+				CoderResult r = encoder.encode(chars, bytes, true);
+				if (r.isUnderflow()) r = encoder.flush(bytes);
+				drain();
+				if (r.isUnderflow()) break;
+			}
+			// System.out, or an embedder's stream, may buffer too
+			if (stream != null) stream.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed writing output: " + e.getMessage(), e);
+		} finally {
+			buffer.setLength(0);
+		}
+	}
+
+	private void drain() throws IOException {
+		bytes.flip();
+		while (bytes.hasRemaining()) channel.write(bytes);
+		bytes.clear();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		flush();
+		if (ownsChannel) channel.close();
+	}
+}
@@ -9,7 +9,12 @@ class Parser {
 	private boolean panicMode = false;
 	private boolean hadError  = false;
 
-	Parser(List<Token> tokens) { this.tokens = tokens; }
+	private final ErrorReporter errors;
+
+	Parser(List<Token> tokens, ErrorReporter errors) {
+		this.tokens = tokens;
+		this.errors = errors;
+	}
 
 	// program → statement* EOF
 	List<Stmt> parse() {
@@ -23,6 +28,10 @@ class Parser {
 
 	// declaration → (variable_decl ";") | function_decl | class_decl | statement
 	private Stmt declaration() {
+		return at(peek().line, declarationAt());
+	}
+
+	private Stmt declarationAt() {
 		if (match(TokenType.CLASS)) return classDecl();
 
 		// Prefer explicit declarators before falling back to statement/expr
@@ -186,7 +195,11 @@ class Parser {
 	}
 
 	// statement → return_stmt | control_flow | block | expression_stmt | continue | break
-		private Stmt statement() {
+	private Stmt statement() {
+		return at(peek().line, statementAt());
+	}
+
+	private Stmt statementAt() {
 		if (match(TokenType.RETURN)) return returnStmt();
 		if (match(TokenType.IF))         return ifStmt();
 		if (match(TokenType.WHILE)) return whileStmt();
@@ -197,6 +210,11 @@ class Parser {
 		return expressionStmt();
 	}
 
+	private static Stmt at(int line, Stmt stmt) {
+		if (stmt != null && stmt.line == 0) stmt.line = line;
+		return stmt;
+	}
+
 	private Stmt breakStmt() {
 		Token kw = previous();
 		need(TokenType.SEMICOLON, "Expect ';' after break.");
@@ -247,13 +265,14 @@ class Parser {
 
 		Stmt initializer = null;
 		if (!check(TokenType.SEMICOLON)) {
+			int line = peek().line;
 			if (isTypeHead()) {
-				initializer = variableDecl();
+				initializer = at(line, variableDecl());
 				need(TokenType.SEMICOLON, "Expect ';' after for initializer.");
 			} else {
 				Expr initExpr = expression();
 				need(TokenType.SEMICOLON, "Expect ';' after for initializer.");
-				initializer = new Stmt.Expression(initExpr);
+				initializer = at(line, new Stmt.Expression(initExpr));
 			}
 		} else {
 			// consume ';'
@@ -535,7 +554,7 @@ class Parser {
 	private void report(Token token, String message) {
 		if (!panicMode) {
 			hadError = true;
-			RainLang.error(token.line, message);
+			errors.error(token.line, message);
 		}
 		panicMode = true;
 	}
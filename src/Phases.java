@@ -0,0 +1,78 @@
+// Element-wise day phases over the engine's per-body arrays. This scalar version is always there,
+// src/simd/VectorPhases replaces it with the Vector API when the jdk.incubator.vector module is loaded.
+// Both give bit-identical results.
+//
+// The volume phases write every position whose volume changed to moved[at ..], as ~i when it went
+// down, and return how many there were.
+class Phases {
+	static final Phases BEST = load();
+
+	private static Phases load() {
+		if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return new Phases();
+		try {
+			return (Phases) Class.forName("VectorPhases").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			// Built without the vector classes
+			return new Phases();
+		}
+	}
+
+	String name() {
+		return "scalar";
+	}
+
+	// volume[i] += amount[i] over from .. to - 1
+	int add(double[] volume, double[] amount, int from, int to, int[] moved, int at) {
+		int m = 0;
+		for (int i = from; i < to; i++) m += add(volume, amount, i, moved, at + m);
+		return m;
+	}
+
+	// The same over the positions idx[0 .. n)
+	int add(double[] volume, double[] amount, int[] idx, int n, int[] moved, int at) {
+		int m = 0;
+		for (int k = 0; k < n; k++) m += add(volume, amount, idx[k], moved, at + m);
+		return m;
+	}
+
+	// volume[i] -= sinks[i], clamped at 0, over from .. to - 1
+	int drain(double[] volume, double[] sinks, int from, int to, int[] moved, int at) {
+		int m = 0;
+		for (int i = from; i < to; i++) m += drain(volume, sinks, i, moved, at + m);
+		return m;
+	}
+
+	int drain(double[] volume, double[] sinks, int[] idx, int n, int[] moved, int at) {
+		int m = 0;
+		for (int k = 0; k < n; k++) m += drain(volume, sinks, idx[k], moved, at + m);
+		return m;
+	}
+
+	// Direct convolution of storms with a kernel: target[at + j + d] += kernel[d] * depths[j] * area
+	void spread(double[] target, int at, double[] depths, double[] kernel, double area) {
+		for (int j = 0; j < depths.length; j++) {
+			for (int d = 0; d < kernel.length; d++) {
+				target[at + j + d] += kernel[d] * depths[j] * area;
+			}
+		}
+	}
+
+	static int add(double[] volume, double[] amount, int i, int[] moved, int at) {
+		double old = volume[i];
+		volume[i] = volume[i] + amount[i];
+		return changed(old, volume[i], i, moved, at);
+	}
+
+	static int drain(double[] volume, double[] sinks, int i, int[] moved, int at) {
+		double old = volume[i];
+		volume[i] = volume[i] - sinks[i];
+		if (volume[i] < 0) volume[i] = 0;
+		return changed(old, volume[i], i, moved, at);
+	}
+
+	private static int changed(double old, double now, int i, int[] moved, int at) {
+		if (Double.doubleToRawLongBits(old) == Double.doubleToRawLongBits(now)) return 0;
+		moved[at] = now < old ? ~i : i;
+		return 1;
+	}
+}
@@ -0,0 +1,198 @@
+import java.io.*;
+import java.lang.management.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+// --profile: call counts, inclusive and self time, and bytes allocated per RainLang function, method,
+// class and native builtin, standard library included. Each thread keeps its own call stack so
+// ensemble members can be profiled while they run side by side.
+final class Profiler {
+	// Allocation counters are per thread and only approximate, they count whole TLABs
+	private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+	private final Map<Object, Site> sites = new ConcurrentHashMap<>();
+	private final Map<String, Site> byName = new ConcurrentHashMap<>();
+	// Self time by call path, only kept when collapsed stacks are wanted
+	private final Map<String, LongAdder> stacks;
+	private final ThreadLocal<Stack> stack = ThreadLocal.withInitial(Stack::new);
+	private final Thread main = Thread.currentThread();
+	private final long start = System.nanoTime();
+	private long end = 0;
+
+	Profiler(boolean collectStacks) {
+		this.stacks = collectStacks ? new ConcurrentHashMap<>() : null;
+	}
+
+	private static com.sun.management.ThreadMXBean threads() {
+		if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean t && t.isThreadAllocatedMemorySupported()) {
+			t.setThreadAllocatedMemoryEnabled(true);
+			return t;
+		}
+		return null;
+	}
+
+	private static final class Site {
+		final String name;
+		final LongAdder calls = new LongAdder();
+		final LongAdder total = new LongAdder();
+		final LongAdder self = new LongAdder();
+		final LongAdder allocated = new LongAdder();
+
+		Site(String name) {
+			this.name = name;
+		}
+	}
+
+	private static final class Frame {
+		Site site;
+		String path;
+		long start;
+		long allocStart;
+		// Time and bytes of the calls made from this one
+		long inner;
+		long innerAlloc;
+		// Already further down the stack, so recursion doesn't count its total twice
+		boolean nested;
+	}
+
+	private static final class Stack {
+		final List<Frame> frames = new ArrayList<>();
+		final Map<Site, Integer> active = new HashMap<>();
+		int depth = 0;
+		// Inclusive time of the outermost calls, what is left of the run is top-level script code
+		long outer = 0;
+	}
+
+	void enter(RainFunction fn) {
+		enter(fn.declaration, fn);
+	}
+
+	void enter(RainClass klass) {
+		// Copies of a class made for ensemble members share its name and constructor
+		enter(klass.ctor != null ? klass.ctor : klass.name, klass);
+	}
+
+	// Natives have no declaration, each is keyed by its callable object
+	void enter(Callable fn) {
+		enter(fn, fn);
+	}
+
+	private void enter(Object key, Object callee) {
+		Site site = sites.get(key);
+		if (site == null) {
+			String name = name(callee);
+			site = sites.computeIfAbsent(key, k -> byName.computeIfAbsent(name, Site::new));
+		}
+		Stack s = stack.get();
+		if (s.depth == s.frames.size()) s.frames.add(new Frame());
+		Frame parent = s.depth > 0 ? s.frames.get(s.depth - 1) : null;
+		Frame f = s.frames.get(s.depth++);
+		f.site = site;
+		f.inner = 0;
+		f.innerAlloc = 0;
+		f.nested = s.active.merge(site, 1, Integer::sum) > 1;
+		if (stacks != null) f.path = parent == null ? "<script>;" + site.name : parent.path + ";" + site.name;
+		f.allocStart = allocated();
+		f.start = System.nanoTime();
+	}
+
+	void exit() {
+		long now = System.nanoTime();
+		long alloc = allocated();
+		Stack s = stack.get();
+		Frame f = s.frames.get(--s.depth);
+		long time = now - f.start;
+		long bytes = alloc - f.allocStart;
+		Site site = f.site;
+		site.calls.increment();
+		site.self.add(time - f.inner);
+		site.allocated.add(bytes - f.innerAlloc);
+		if (!f.nested) site.total.add(time);
+		if (s.active.merge(site, -1, Integer::sum) == 0) s.active.remove(site);
+		if (stacks != null) stacks.computeIfAbsent(f.path, p -> new LongAdder()).add(time - f.inner);
+		if (s.depth > 0) {
+			Frame parent = s.frames.get(s.depth - 1);
+			parent.inner += time;
+			parent.innerAlloc += bytes;
+		} else if (Thread.currentThread() == main) {
+			s.outer += time;
+		}
+		f.site = null;
+		f.path = null;
+	}
+
+	private static long allocated() {
+		return THREADS == null ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+	}
+
+	// End of the profiled run, before any reporting
+	void stop() {
+		if (end == 0) end = System.nanoTime();
+	}
+
+	// Sorted by self time, most first
+	void report(PrintStream out) {
+		stop();
+		long wall = end - start;
+		List<Site> rows = new ArrayList<>(byName.values());
+		rows.removeIf(r -> r.calls.sum() == 0);
+		rows.sort(Comparator.comparingLong((Site r) -> r.self.sum()).reversed());
+
+		long script = Math.max(0, wall - stack.get().outer);
+		out.println();
+		out.printf(Locale.ROOT, "Profile: %.1f ms wall, %.1f ms outside any function (parsing, analysis and top-level code)%n",
+			wall / 1e6, script / 1e6);
+		out.printf(Locale.ROOT, "%12s %12s %12s %7s %12s  %s%n", "calls", "total ms", "self ms", "self %", "self KB", "function");
+		for (Site r : rows) {
+			out.printf(Locale.ROOT, "%12d %12.3f %12.3f %6.1f%% %12s  %s%n",
+				r.calls.sum(), r.total.sum() / 1e6, r.self.sum() / 1e6, 100.0 * r.self.sum() / wall,
+				THREADS == null ? "-" : Long.toString(r.allocated.sum() / 1024), r.name);
+		}
+		out.flush();
+	}
+
+	// One "frame;frame;frame microseconds" line per call path, as flame graph tools take it
+	void writeStacks(Path path) throws IOException {
+		stop();
+		long script = Math.max(0, end - start - stack.get().outer);
+		try (BufferedWriter w = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			if (script >= 1000) w.write("<script> " + script / 1000 + "\n");
+			for (Map.Entry<String, LongAdder> e : new TreeMap<>(stacks).entrySet()) {
+				long micros = e.getValue().sum() / 1000;
+				if (micros > 0) w.write(e.getKey() + " " + micros + "\n");
+			}
+		}
+	}
+
+	// connect(Body, Body, Volume), Dam.open(), new Body(String, Area, Volume), __simulate
+	private static String name(Object callee) {
+		if (callee instanceof RainFunction fn) {
+			String owner = fn.closure.hasLocal("this") && fn.closure.getLocal("this") instanceof RainInstance i
+				? i.klass.name + "." : "";
+			return owner + fn.declaration.name.lexeme + params(fn.declaration.params);
+		}
+		if (callee instanceof RainClass k) {
+			return "new " + k.name + (k.ctor != null ? params(k.ctor.params) : "()");
+		}
+		// Natives print as <native name fn>
+		String s = callee.toString();
+		if (s.startsWith("<native ") && s.endsWith(">")) {
+			s = s.substring("<native ".length(), s.length() - 1);
+			if (s.endsWith(" fn")) s = s.substring(0, s.length() - " fn".length());
+		}
+		return s;
+	}
+
+	private static String params(List<Stmt.Param> params) {
+		StringJoiner out = new StringJoiner(", ", "(", ")");
+		for (Stmt.Param p : params) {
+			StringBuilder t = new StringBuilder(p.type.isNone ? "None" : p.type.name.lexeme);
+			for (int i = 0; i < p.type.arrayDepth; i++) t.append("[]");
+			out.add(t);
+		}
+		return out.toString();
+	}
+}
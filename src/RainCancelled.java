@@ -0,0 +1,4 @@
+// Thrown once the engine has been cancelled, unwinds the whole run rather than just the statement
+class RainCancelled extends RuntimeException {
+	RainCancelled() { super(null, null, false, false); }
+}
@@ -2,7 +2,7 @@ import java.util.*;
 
 class RainClass implements Callable {
 	final String name;
-	private final Environment closure;
+	final Environment closure;
 	final Map<String, RainFunction> methods;
 	final List<String> fieldNames;
 	final List<Stmt> fieldInits;
@@ -25,6 +25,17 @@ class RainClass implements Callable {
 
 	@Override
 	public Object call(Interpreter interpreter, Token paren, List<Object> args) {
+		Profiler profiler = interpreter.profiler;
+		if (profiler == null) return instantiate(interpreter, paren, args);
+		profiler.enter(this);
+		try {
+			return instantiate(interpreter, paren, args);
+		} finally {
+			profiler.exit();
+		}
+	}
+
+	private Object instantiate(Interpreter interpreter, Token paren, List<Object> args) {
 		// Create instance and a base env with 'this'
 		RainInstance instance = new RainInstance(this);
 
@@ -0,0 +1,80 @@
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+// client.sh: runs a script, or the prompt, on a RainLang --server rather than in a JVM of its own. Takes
+// the same options and script as RainLang, plus --socket=<path>, and exits with the script's status.
+public class RainClient {
+	public static void main(String[] args) throws IOException {
+		Path socket = RainServer.defaultSocket();
+		List<String> forwarded = new ArrayList<>();
+		for (String arg : args) {
+			if (arg.startsWith("--socket=")) {
+				socket = Paths.get(arg.substring("--socket=".length()));
+				continue;
+			}
+			forwarded.add(arg);
+		}
+		boolean prompt = RainServer.prompt(forwarded);
+
+		SocketChannel channel;
+		try {
+			channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+		} catch (SocketException e) {
+			System.err.println("Error: No RainLang server on " + socket + " - start one with run.sh --server");
+			System.exit(RainLang.ERR_SERVER_UNAVAILABLE);
+			return;
+		}
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+		DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+		out.writeInt(RainServer.VERSION);
+		RainServer.writeString(out, Paths.get("").toAbsolutePath().toString());
+		RainServer.writeString(out, System.out.charset().name());
+		out.writeInt(forwarded.size());
+		for (String arg : forwarded) RainServer.writeString(out, arg);
+		out.flush();
+		if (prompt) sendStdin(out);
+
+		int status = RainLang.ERR_SERVER_UNAVAILABLE;
+		try {
+			while (true) {
+				int kind = in.readByte();
+				if (kind == RainServer.EXIT) {
+					status = in.readInt();
+					break;
+				}
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				PrintStream to = kind == RainServer.ERR ? System.err : System.out;
+				to.write(bytes);
+				to.flush();
+			}
+		} catch (EOFException e) {
+			System.err.println("Error: Lost the connection to the RainLang server on " + socket);
+		}
+		System.exit(status);
+	}
+
+	// Copies stdin to the server as the prompt reads it
+	private static void sendStdin(DataOutputStream out) {
+		Thread pump = new Thread(() -> {
+			byte[] buffer = new byte[8192];
+			try {
+				int n;
+				while ((n = System.in.read(buffer)) > 0) {
+					out.writeInt(n);
+					out.write(buffer, 0, n);
+					out.flush();
+				}
+				out.writeInt(0);
+				out.flush();
+			} catch (IOException e) {
+				// The server has finished with the prompt
+			}
+		}, "stdin");
+		pump.setDaemon(true);
+		pump.start();
+	}
+}
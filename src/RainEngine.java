@@ -0,0 +1,190 @@
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+// One independent RainLang runtime: its own interpreter, analyser, error reporting, output and standard
+// library state. Engines share nothing mutable, so one JVM can run many scripts at once, an engine per
+// script. Each engine runs one unit at a time, callers on other threads wait their turn.
+//
+// The standard library is scanned and parsed once per JVM and its syntax tree, which nothing writes to
+// after parsing, is shared. Each engine analyses and runs it into its own globals on first use.
+public final class RainEngine implements AutoCloseable {
+	private static final String STDLIB_RESOURCE = "standard_lib.txt";
+
+	private final Interpreter interpreter;
+	private final SemanticAnalyser analyser;
+	private final ErrorReporter errors;
+	private boolean stdlibLoaded = false;
+
+	// Script output to stdout, errors to stderr
+	public RainEngine() {
+		this(OutputSink.stdout(), ErrorReporter.STDERR);
+	}
+
+	RainEngine(OutputSink output, ErrorReporter.Listener listener) {
+		errors = new ErrorReporter(new ErrorReporter.Listener() {
+			// Keep errors in order with the output before them
+			@Override public void error(int line, String message) {
+				interpreter.output.flush();
+				listener.error(line, message);
+			}
+			@Override public void fatal(String message) {
+				interpreter.output.flush();
+				listener.fatal(message);
+			}
+		});
+		CallResolution calls = new CallResolution();
+		interpreter = new Interpreter(calls, output, errors);
+		analyser = new SemanticAnalyser(calls, errors);
+	}
+
+	// Parsed on first use by any engine
+	private static final class Stdlib {
+		static final String SOURCE;
+		static final List<Stmt> PROGRAM;
+		// Why there is no standard library, null if there is one
+		static final String FAILURE;
+
+		static {
+			String source = null, failure = null;
+			List<Stmt> program = null;
+			try (InputStream in = RainEngine.class.getResourceAsStream(STDLIB_RESOURCE)) {
+				if (in == null) {
+					failure = "Could not load standard library at " + STDLIB_RESOURCE;
+				} else {
+					source = new String(in.readAllBytes(), Charset.defaultCharset());
+					StringBuilder messages = new StringBuilder();
+					ErrorReporter collect = new ErrorReporter((line, message) ->
+						messages.append(System.lineSeparator()).append("[line ").append(line).append("] ").append(message));
+					program = parse(source, "standard library", collect);
+					if (collect.count() > 0) failure = "Standard library does not parse:" + messages;
+				}
+			} catch (IOException e) {
+				failure = "Failed reading standard library: " + e.getMessage();
+			}
+			SOURCE = source;
+			PROGRAM = failure == null ? Collections.unmodifiableList(program) : null;
+			FAILURE = failure;
+		}
+	}
+
+	// For the command line, profilers, history storage and the like are set on it before the first run
+	Interpreter interpreter() {
+		return interpreter;
+	}
+
+	// Analyse and run the standard library into this engine's globals, once. False if it can't be
+	public synchronized boolean loadStdlib() {
+		if (stdlibLoaded) return true;
+		if (Stdlib.FAILURE != null) {
+			errors.fatal(Stdlib.FAILURE);
+			return false;
+		}
+		int before = errors.count();
+		RainEvents.StdlibLoad load = RainEvents.recording() ? new RainEvents.StdlibLoad() : null;
+		if (interpreter.lineProfiler != null) interpreter.lineProfiler.register("standard library", Stdlib.SOURCE, Stdlib.PROGRAM);
+		analyse(Stdlib.PROGRAM, "standard library", before);
+		if (errors.count() == before) execute(Stdlib.PROGRAM, "standard library");
+		if (load != null && load.shouldCommit()) {
+			load.characters = Stdlib.SOURCE.length();
+			load.commit();
+		}
+		stdlibLoaded = errors.count() == before;
+		return stdlibLoaded;
+	}
+
+	// Compile and run source after the standard library. False if either didn't compile; errors while
+	// running are counted in errorCount() but the unit still ran. unit names the source in profiles and
+	// flight recordings.
+	public synchronized boolean run(String source, String unit) {
+		if (!loadStdlib()) return false;
+		List<Stmt> program = compile(source, unit);
+		if (program == null) return false;
+		execute(program, unit);
+		return true;
+	}
+
+	public boolean run(String source) {
+		return run(source, "script");
+	}
+
+	// The analysed program, or null if it has errors
+	synchronized List<Stmt> compile(String source, String unit) {
+		int before = errors.count();
+		List<Stmt> program = parse(source, unit, errors);
+		if (interpreter.lineProfiler != null) interpreter.lineProfiler.register(unit, source, program);
+		analyse(program, unit, before);
+		return errors.count() == before ? program : null;
+	}
+
+	// Each step is a flight recorder event
+	private static List<Stmt> parse(String source, String unit, ErrorReporter errors) {
+		RainEvents.Scan scan = RainEvents.recording() ? new RainEvents.Scan() : null;
+		Scanner scanner = new Scanner(source, errors);
+		List<Token> tokens = scanner.tokenise();
+		if (scan != null && scan.shouldCommit()) {
+			scan.unit = unit;
+			scan.characters = source.length();
+			scan.tokens = tokens.size();
+			scan.commit();
+		}
+
+		RainEvents.Parse parse = RainEvents.recording() ? new RainEvents.Parse() : null;
+		Parser parser = new Parser(tokens, errors);
+		List<Stmt> program = parser.parse();
+		if (parse != null && parse.shouldCommit()) {
+			parse.unit = unit;
+			parse.statements = program.size();
+			parse.commit();
+		}
+		return program;
+	}
+
+	// before is the error count when the unit started, the event records the unit's own
+	private void analyse(List<Stmt> program, String unit, int before) {
+		RainEvents.Analyse analyse = RainEvents.recording() ? new RainEvents.Analyse() : null;
+		analyser.analyse(program);
+		if (analyse != null && analyse.shouldCommit()) {
+			analyse.unit = unit;
+			analyse.statements = program.size();
+			analyse.errors = errors.count() - before;
+			analyse.commit();
+		}
+	}
+
+	synchronized void execute(List<Stmt> program, String unit) {
+		RainEvents.Execute execute = RainEvents.recording() ? new RainEvents.Execute() : null;
+		interpreter.interpret(program);
+		if (execute != null && execute.shouldCommit()) {
+			execute.unit = unit;
+			execute.statements = program.size();
+			execute.commit();
+		}
+	}
+
+	// Errors reported so far
+	public synchronized int errorCount() {
+		return errors.count();
+	}
+
+	// Carry on after errors, as the prompt does after each line
+	public synchronized void clearErrors() {
+		errors.reset();
+	}
+
+	// Stop the unit running on another thread at its next loop turn, call or simulated day. It ends
+	// with RainCancelled, and so does anything run on this engine afterwards.
+	public void cancel() {
+		interpreter.cancelled.set(true);
+	}
+
+	// Write out anything still buffered, release the output and any history file
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			interpreter.output.close();
+		} finally {
+			interpreter.simulation.close();
+		}
+	}
+}
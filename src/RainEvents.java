@@ -0,0 +1,139 @@
+import jdk.jfr.*;
+
+// JDK Flight Recorder events, so a recording shows RainLang activity next to GC and CPU.
+// Loading an event class starts up part of JFR and adds a few hundred milliseconds to every run,
+// so sites only create events once a recorder exists (-XX:StartFlightRecording or jcmd JFR.start):
+//   RainEvents.Day e = RainEvents.recording() ? new RainEvents.Day() : null;
+//   ...
+//   if (e != null && e.shouldCommit()) { fill in fields; e.commit(); }
+// Events begin when created and fields are only filled in when the event will be written.
+final class RainEvents {
+	private RainEvents() {}
+
+	static boolean recording() {
+		return FlightRecorder.isInitialized();
+	}
+
+	@Name("rainlang.Scan")
+	@Label("Scan")
+	@Category({ "RainLang", "Script" })
+	@Description("Source text turned into tokens")
+	static final class Scan extends Event {
+		@Label("Unit") String unit;
+		@Label("Characters") int characters;
+		@Label("Tokens") int tokens;
+
+		Scan() {
+			begin();
+		}
+	}
+
+	@Name("rainlang.Parse")
+	@Label("Parse")
+	@Category({ "RainLang", "Script" })
+	static final class Parse extends Event {
+		@Label("Unit") String unit;
+		@Label("Statements") int statements;
+
+		Parse() {
+			begin();
+		}
+	}
+
+	@Name("rainlang.Analyse")
+	@Label("Semantic Analysis")
+	@Category({ "RainLang", "Script" })
+	static final class Analyse extends Event {
+		@Label("Unit") String unit;
+		@Label("Statements") int statements;
+		@Label("Errors") int errors;
+
+		Analyse() {
+			begin();
+		}
+	}
+
+	@Name("rainlang.Execute")
+	@Label("Execute")
+	@Category({ "RainLang", "Script" })
+	static final class Execute extends Event {
+		@Label("Unit") String unit;
+		@Label("Statements") int statements;
+
+		Execute() {
+			begin();
+		}
+	}
+
+	@Name("rainlang.StdlibLoad")
+	@Label("Standard Library Load")
+	@Category({ "RainLang", "Script" })
+	@Description("Reading, compiling and running standard_lib.txt")
+	static final class StdlibLoad extends Event {
+		@Label("Characters") int characters;
+
+		StdlibLoad() {
+			begin();
+		}
+	}
+
+	@Name("rainlang.Simulate")
+	@Label("Simulate")
+	@Category({ "RainLang", "Simulation" })
+	@Description("One simulate() call")
+	static final class Simulate extends Event {
+		@Label("First Day") long firstDay;
+		@Label("Days") long days;
+		@Label("Skipped Days") long skippedDays;
+		@Label("Bodies") int bodies;
+		@Label("Components") int components;
+		@Label("Actions") long actions;
+
+		Simulate() {
+			begin();
+		}
+	}
+
+	@Name("rainlang.Day")
+	@Label("Simulated Day")
+	@Category({ "RainLang", "Simulation" })
+	@StackTrace(false)
+	static final class Day extends Event {
+		@Label("Day") long day;
+		@Label("Bodies") int bodies;
+		@Label("Wet Bodies") @Description("Bodies rained on today") int wetBodies;
+		@Label("Distributed") @Description("Bodies taken off the active set") long distributed;
+
+		Day() {
+			begin();
+		}
+	}
+
+	@Name("rainlang.SkippedDays")
+	@Label("Skipped Days")
+	@Category({ "RainLang", "Simulation" })
+	@Description("Quiet days fast-forwarded in one go")
+	@StackTrace(false)
+	static final class SkippedDays extends Event {
+		@Label("First Day") long firstDay;
+		@Label("Days") long days;
+		@Label("Bodies") int bodies;
+
+		SkippedDays() {
+			begin();
+		}
+	}
+
+	@Name("rainlang.Report")
+	@Label("Hydrology Report")
+	@Category({ "RainLang", "Output" })
+	static final class Report extends Event {
+		@Label("Bodies") int bodies;
+		@Label("From Day") long from;
+		@Label("Days") @Description("Rows written") long days;
+
+		Report() {
+			begin();
+		}
+	}
+}
@@ -1,8 +1,8 @@
 import java.util.*;
 
 class RainFunction implements Callable {
-	private final Stmt.Function declaration;
-	private final Environment closure;
+	final Stmt.Function declaration;
+	final Environment closure;
 
 	RainFunction(Stmt.Function declaration, Environment closure) {
 		this.declaration = declaration;
@@ -23,6 +23,18 @@ class RainFunction implements Callable {
 
 	@Override
 	public Object call(Interpreter interpreter, Token paren, List<Object> args) {
+		interpreter.checkCancelled();
+		Profiler profiler = interpreter.profiler;
+		if (profiler == null) return invoke(interpreter, args);
+		profiler.enter(this);
+		try {
+			return invoke(interpreter, args);
+		} finally {
+			profiler.exit();
+		}
+	}
+
+	private Object invoke(Interpreter interpreter, List<Object> args) {
 		Environment env = new Environment(closure);
 
 		// Bind parameters
@@ -1,8 +1,8 @@
 import java.util.*;
 
 class RainInstance {
-	private final RainClass klass;
-	private final Map<String, Object> fields = new HashMap<>();
+	final RainClass klass;
+	final Map<String, Object> fields = new HashMap<>();
 
 	RainInstance(RainClass klass) { this.klass = klass; }
 
@@ -11,6 +11,10 @@ class RainInstance {
 		fields.put(name, value);
 	}
 
+	// Direct field access for native code
+	Object getField(String name) { return fields.get(name); }
+	void setField(String name, Object value) { fields.put(name, value); }
+
 	Object get(Token name) {
 		if (fields.containsKey(name.lexeme)) return fields.get(name.lexeme);
 		RainFunction method = klass.methods.get(name.lexeme);
@@ -3,140 +3,260 @@ import java.nio.charset.*;
 import java.nio.file.*;
 import java.util.*;
 
+// One run of the command line: a script, or the prompt, in one engine. main runs it on this JVM's
+// stdin, stdout and stderr, RainServer runs one for each client with the client's.
 public class RainLang {
 	public static final int ERR_INVALID_USAGE = 64;
 	public static final int ERR_SOURCE_CODE_ERROR = 65;
-	private static final Interpreter interpreter = new Interpreter();
-	private static final SemanticAnalyser semanal = new SemanticAnalyser();
-	
-	private static int errors = 0;
+	// The client couldn't reach a server, or a server couldn't start
+	public static final int ERR_SERVER_UNAVAILABLE = 69;
 
-	private static boolean stdlibLoaded = false;
-	private static final String STDLIB_RESOURCE = "standard_lib.txt";
+	private final RainEngine engine;
+	private final Interpreter interpreter;
+	// Relative paths in options and scripts resolve against this
+	private final Path directory;
+	private final InputStream in;
+	private final PrintStream out;
+	private final PrintStream err;
+
+	// Output flush policy from --flush, applied to whichever sink is in use
+	private OutputSink.Policy policy = OutputSink.Policy.SIZE;
+	private int limit = OutputSink.DEFAULT_LIMIT;
+	// Collapsed stacks from --profile=<file>
+	private Path profileStacks = null;
+	private Path lineListing = null;
+	private boolean simStats = false;
+	private boolean memoryReport = false;
+
+	RainLang(Path directory, InputStream in, PrintStream out, PrintStream err, OutputSink output) {
+		this.directory = directory;
+		this.in = in;
+		this.out = out;
+		this.err = err;
+		engine = new RainEngine(output, ErrorReporter.printing(err));
+		interpreter = engine.interpreter();
+		interpreter.directory = directory;
+	}
+
+	// From another thread, when no one is waiting for the run any more
+	void cancel() {
+		engine.cancel();
+	}
 
 	public static void main(String[] args) throws IOException {
-		if (args.length > 1) {
-			System.out.println("Usage: rainlang [script]");
-			System.exit(ERR_INVALID_USAGE); 
-		} else if (args.length == 1) {
-			String file = args[0];
-			runFile(file);
-		} else {
-			runPrompt();
+		for (String arg : args) {
+			if (arg.equals("--server") || arg.startsWith("--server=")) System.exit(RainServer.serve(args));
+		}
+		int status = new RainLang(Paths.get(""), System.in, System.out, System.err, OutputSink.stdout()).run(args);
+		if (status != 0) System.exit(status);
+	}
+
+	// Run with these arguments, returns the exit status
+	int run(String[] args) throws IOException {
+		try {
+			String file = null;
+			for (String arg : args) {
+				if (arg.startsWith("--")) {
+					if (!option(arg)) return usage();
+				} else if (file == null) {
+					file = arg;
+				} else {
+					return usage();
+				}
+			}
+			try {
+				if (file != null) return runFile(file);
+				runPrompt();
+				return 0;
+			} finally {
+				profile();
+			}
+		} finally {
+			engine.close();
+		}
+	}
+
+	private int usage() {
+		out.println("Usage: rainlang [options] [script]");
+		out.println("  --history=memory        keep body history on the heap (default)");
+		out.println("  --history=mmap[:file]   spill body history to a memory-mapped file");
+		out.println("  --output=<file>         write script output to a file instead of stdout");
+		out.println("  --flush=line|size[:n]|exit");
+		out.println("                          flush output after each line, every n chars (default),");
+		out.println("                          or only on flush() and at the end of the run");
+		out.println("  --profile               print time and allocation per function at exit");
+		out.println("  --profile=<file>        also write collapsed stacks for flame graph tools");
+		out.println("  --line-profile          print an annotated listing with counts and time per line");
+		out.println("  --line-profile=<file>   write the listing to a file instead");
+		out.println("  --memory-report         print estimated heap use by class and array type at exit");
+		out.println("  --sim-stats             print simulate() phase times and counters at exit");
+		out.println("  --server[=<socket>]     run scripts for client.sh on a warm JVM until stopped");
+		out.println("  --jobs=<n>              with --server, scripts to run at once (default one per core)");
+		return ERR_INVALID_USAGE;
+	}
+
+	// Apply one --option, false if it isn't recognised
+	private boolean option(String arg) throws IOException {
+		if (arg.equals("--history=memory")) return true;
+		if (arg.equals("--history=mmap")) {
+			interpreter.simulation.useHistory(MappedHistory.temporary());
+			return true;
+		}
+		if (arg.startsWith("--history=mmap:")) {
+			interpreter.simulation.useHistory(new MappedHistory(directory.resolve(arg.substring("--history=mmap:".length()))));
+			return true;
+		}
+		if (arg.equals("--memory-report")) {
+			memoryReport = true;
+			return true;
+		}
+		if (arg.equals("--sim-stats")) {
+			simStats = true;
+			return true;
+		}
+		if (arg.equals("--profile")) {
+			interpreter.profiler = new Profiler(false);
+			return true;
+		}
+		if (arg.startsWith("--profile=")) {
+			profileStacks = directory.resolve(arg.substring("--profile=".length()));
+			interpreter.profiler = new Profiler(true);
+			return true;
+		}
+		if (arg.equals("--line-profile")) {
+			interpreter.lineProfiler = new LineProfiler();
+			return true;
+		}
+		if (arg.startsWith("--line-profile=")) {
+			lineListing = directory.resolve(arg.substring("--line-profile=".length()));
+			interpreter.lineProfiler = new LineProfiler();
+			return true;
+		}
+		if (arg.startsWith("--output=")) {
+			OutputSink sink = OutputSink.file(directory.resolve(arg.substring("--output=".length())));
+			sink.setPolicy(policy, limit);
+			interpreter.setOutput(sink);
+			return true;
+		}
+		if (arg.startsWith("--flush=")) {
+			String mode = arg.substring("--flush=".length());
+			limit = OutputSink.DEFAULT_LIMIT;
+			if (mode.equals("line")) policy = OutputSink.Policy.LINE;
+			else if (mode.equals("exit")) policy = OutputSink.Policy.EXIT;
+			else if (mode.equals("size")) policy = OutputSink.Policy.SIZE;
+			else if (mode.startsWith("size:")) {
+				policy = OutputSink.Policy.SIZE;
+				try {
+					limit = Integer.parseInt(mode.substring("size:".length()));
+				} catch (NumberFormatException e) {
+					return false;
+				}
+				if (limit <= 0) return false;
+			}
+			else return false;
+			interpreter.output.setPolicy(policy, limit);
+			return true;
+		}
+		return false;
+	}
+
+	// The --sim-stats summary, --memory-report, --profile table and --line-profile listing go to stderr,
+	// after any script output still buffered
+	private void profile() {
+		if (simStats) {
+			interpreter.output.flush();
+			interpreter.simulation.stats(true).print(err);
+		}
+		if (memoryReport) {
+			interpreter.output.flush();
+			PrintWriter report = new PrintWriter(err);
+			try {
+				report.println();
+				MemoryReport.of(interpreter, interpreter.globals).write(report);
+			} catch (IOException e) {
+				// Not thrown writing to stderr
+			}
+			report.flush();
+		}
+		if (interpreter.profiler != null) {
+			interpreter.output.flush();
+			interpreter.profiler.report(err);
+			if (profileStacks != null) {
+				try {
+					interpreter.profiler.writeStacks(profileStacks);
+				} catch (IOException e) {
+					err.println("Error: Failed to write profile stacks - " + profileStacks);
+					err.println("Reason: " + e.getMessage());
+				}
+			}
+		}
+		if (interpreter.lineProfiler != null) {
+			interpreter.output.flush();
+			if (lineListing == null) {
+				interpreter.lineProfiler.write(err);
+				return;
+			}
+			try (PrintStream out = new PrintStream(Files.newOutputStream(lineListing), false, StandardCharsets.UTF_8)) {
+				interpreter.lineProfiler.write(out);
+			} catch (IOException e) {
+				err.println("Error: Failed to write line profile - " + lineListing);
+				err.println("Reason: " + e.getMessage());
+			}
 		}
 	}
 
-	private static void runFile(String path) {
-		ensureStdlibLoaded();
-		if (errors > 0) System.exit(ERR_SOURCE_CODE_ERROR);
+	private int runFile(String path) {
+		if (!engine.loadStdlib()) return ERR_SOURCE_CODE_ERROR;
 
 		try {
-			String source = new String(Files.readAllBytes(Paths.get(path)), Charset.defaultCharset());
-			run(source);
-			run("hydrology_report_implicit();");
+			String source = new String(Files.readAllBytes(directory.resolve(path)), Charset.defaultCharset());
+			run(source, path);
+			run("hydrology_report_implicit();", "implicit report");
 
-			if (errors > 0) System.exit(ERR_SOURCE_CODE_ERROR);
+			return engine.errorCount() > 0 ? ERR_SOURCE_CODE_ERROR : 0;
 		} catch (NoSuchFileException e) {
-			System.err.println("Error: File not found - " + path);
-			System.exit(ERR_INVALID_USAGE);
+			err.println("Error: File not found - " + path);
+			return ERR_INVALID_USAGE;
 		} catch (IOException e) {
-			System.err.println("Error: Failed to read file - " + path);
-			System.err.println("Reason: " + e.getMessage());
-			System.exit(ERR_SOURCE_CODE_ERROR);
+			err.println("Error: Failed to read file - " + path);
+			err.println("Reason: " + e.getMessage());
+			return ERR_SOURCE_CODE_ERROR;
 		}
 	}
 
 	// REPL style running of code
-	private static void runPrompt() throws IOException {
-		InputStreamReader input = new InputStreamReader(System.in);
+	private void runPrompt() throws IOException {
+		InputStreamReader input = new InputStreamReader(in);
 		BufferedReader reader = new BufferedReader(input);
 
 		interpreter.setReplMode(true);
+		// Results should show up as soon as they are printed
+		if (policy == OutputSink.Policy.SIZE) interpreter.output.setPolicy(OutputSink.Policy.LINE, limit);
 
-		ensureStdlibLoaded();
-		if (errors > 0) return;
+		if (!engine.loadStdlib()) return;
 
 		while (true) { 
-			System.out.print("> ");
+			interpreter.output.flush();
+			out.print("> ");
+			out.flush();
 			String line = reader.readLine();
-			if (line == null) continue;
+			if (line == null) break;
 			if (line.length() == 0) continue;
 			if (line.contains("exit")) break;
 			char last = line.charAt(line.length() - 1);
 			if (last != ';' && last != '}') {
 				line = line + ";";
 			}
-			run(line);
+			run(line, "prompt");
 			// Errors shouldn't kill REPL sessions
-			errors = 0;
+			engine.clearErrors();
 		}
 	}
 
-	private static void run(String source) {
-		ensureStdlibLoaded();
-		if (errors > 0) {
-			System.out.println(errors + " Errors.");
-			return;
-		}
-
-		Scanner scanner = new Scanner(source);
-		List<Token> tokens = scanner.tokenise();
-
-		Parser parser = new Parser(tokens);
-		List<Stmt> program = parser.parse();
-
-		semanal.analyse(program);
-
-		if (errors > 0) {
-			System.out.println(errors + " Errors.");
-			return;
-		}
-
-		interpreter.interpret(program);
-	}
-
-	public static void error(int line, String message) {
-		report(line, "", message);
-	}
-
-	private static void report(int line, String where, String message) {
-		System.err.println("[line " + line + "] Error" + where + ": " + message);
-		errors++;
-	}
-
-	private static void ensureStdlibLoaded() {
-		if (stdlibLoaded) return;
-
-		InputStream in = RainLang.class.getResourceAsStream(STDLIB_RESOURCE);
-		if (in == null) {
-			System.err.println("Fatal: Could not load standard library at " + STDLIB_RESOURCE);
-			errors++;
-			return;
+	// Nothing more runs once there are errors, each attempt says how many
+	private void run(String source, String unit) {
+		if (engine.errorCount() > 0 || !engine.run(source, unit)) {
+			interpreter.output.println(engine.errorCount() + " Errors.");
 		}
-
-		String source;
-		try {
-			source = new String(in.readAllBytes(), Charset.defaultCharset());
-		} catch (IOException e) {
-			System.err.println("Fatal: Failed reading standard library: " + e.getMessage());
-			errors++;
-			return;
-		}
-
-		compileAndRunUnit(source);
-		if (errors == 0) stdlibLoaded = true;
-	}
-
-	private static void compileAndRunUnit(String source) {
-		Scanner scanner = new Scanner(source);
-		List<Token> tokens = scanner.tokenise();
-
-		Parser parser = new Parser(tokens);
-		List<Stmt> program = parser.parse();
-
-		semanal.analyse(program);
-		if (errors > 0) return;
-
-		interpreter.interpret(program);
 	}
-}
\ No newline at end of file
+}
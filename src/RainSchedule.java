@@ -0,0 +1,168 @@
+import java.util.*;
+
+// Precomputed daily rain inflow (kernel x depth x area) for one body, indexed by simulation day.
+// Every rain event on the body is summed in when it is registered, so stepping a day is one lookup.
+final class RainSchedule {
+	// Above this many multiply-adds a rain series is convolved by FFT instead of directly
+	private static final long FFT_MIN_WORK = 1 << 16;
+	private static final int FFT_MIN_LENGTH = 64;
+
+	// inflow[i] is the inflow on day origin + i
+	private long origin;
+	private double[] inflow = new double[0];
+	private int length = 0;
+
+	RainSchedule(long origin) {
+		this.origin = origin;
+	}
+
+	// Daily inflow starting on day origin, as saved by a checkpoint
+	RainSchedule(long origin, double[] inflow) {
+		this.origin = origin;
+		this.inflow = inflow.clone();
+		this.length = inflow.length;
+	}
+
+	long origin() {
+		return origin;
+	}
+
+	// Heap held, for memory_report()
+	long bytes() {
+		return MemoryReport.object(8 + 4 + 4) + MemoryReport.array(inflow.length, 8);
+	}
+
+	double[] inflow() {
+		return Arrays.copyOf(inflow, length);
+	}
+
+	double at(long day) {
+		long i = day - origin;
+		return (i >= 0 && i < length) ? inflow[(int) i] : 0;
+	}
+
+	// The day after the last scheduled one
+	long end() {
+		return origin + length;
+	}
+
+	// True once every scheduled day is before 'day'
+	boolean expiredBy(long day) {
+		return day >= origin + length;
+	}
+
+	// Storms of depths[j] falling on day start + j, each spread over the following days by kernel
+	void add(long start, double[] depths, double[] kernel, double area) {
+		if (depths.length == 0 || kernel.length == 0) return;
+		int span = depths.length + kernel.length - 1;
+		double[] target = reserve(start, span);
+		int at = (int) (start - origin);
+
+		long work = (long) depths.length * kernel.length;
+		if (work >= FFT_MIN_WORK && Math.min(depths.length, kernel.length) >= FFT_MIN_LENGTH) {
+			double[] conv = convolve(depths, kernel);
+			for (int t = 0; t < span; t++) target[at + t] += conv[t] * area;
+		} else {
+			Phases.BEST.spread(target, at, depths, kernel, area);
+		}
+	}
+
+	// Forget days before 'day', they have already been applied
+	void trim(long day) {
+		long drop = Math.min(day - origin, length);
+		if (drop <= 0) return;
+		System.arraycopy(inflow, (int) drop, inflow, 0, length - (int) drop);
+		Arrays.fill(inflow, length - (int) drop, length, 0);
+		length -= (int) drop;
+		origin += drop;
+	}
+
+	RainSchedule copy() {
+		RainSchedule out = new RainSchedule(origin);
+		out.inflow = Arrays.copyOf(inflow, inflow.length);
+		out.length = length;
+		return out;
+	}
+
+	// Make room for days [start, start + span) and return the backing array
+	private double[] reserve(long start, int span) {
+		if (start < origin) {
+			int shift = (int) (origin - start);
+			double[] grown = new double[Math.max(length + shift, span)];
+			System.arraycopy(inflow, 0, grown, shift, length);
+			inflow = grown;
+			length += shift;
+			origin = start;
+		}
+		int end = (int) (start - origin) + span;
+		if (end > inflow.length) inflow = Arrays.copyOf(inflow, Math.max(end, inflow.length * 2));
+		if (end > length) length = end;
+		return inflow;
+	}
+
+	// Linear convolution by radix-2 FFT
+	static double[] convolve(double[] a, double[] b) {
+		int span = a.length + b.length - 1;
+		int n = Integer.highestOneBit(span);
+		if (n < span) n <<= 1;
+
+		double[] re = new double[n];
+		double[] im = new double[n];
+		// Pack a into the real part and b into the imaginary part, one forward transform does both
+		for (int i = 0; i < a.length; i++) re[i] = a[i];
+		for (int i = 0; i < b.length; i++) im[i] = b[i];
+		fft(re, im, false);
+
+		// A[k]*B[k] recovered from the packed spectrum: (Z[k]^2 - conj(Z[n-k])^2) / 4i
+		double[] pr = new double[n];
+		double[] pi = new double[n];
+		for (int k = 0; k < n; k++) {
+			int m = (n - k) & (n - 1);
+			double zr = re[k], zi = im[k];
+			double wr = re[m], wi = -im[m];
+			double sr = zr * zr - zi * zi - (wr * wr - wi * wi);
+			double si = 2 * zr * zi - 2 * wr * wi;
+			pr[k] = si / 4;
+			pi[k] = -sr / 4;
+		}
+		fft(pr, pi, true);
+
+		double[] out = new double[span];
+		for (int i = 0; i < span; i++) out[i] = pr[i] / n;
+		return out;
+	}
+
+	private static void fft(double[] re, double[] im, boolean inverse) {
+		int n = re.length;
+		for (int i = 1, j = 0; i < n; i++) {
+			int bit = n >> 1;
+			for (; (j & bit) != 0; bit >>= 1) j ^= bit;
+			j ^= bit;
+			if (i < j) {
+				double t = re[i]; re[i] = re[j]; re[j] = t;
+				t = im[i]; im[i] = im[j]; im[j] = t;
+			}
+		}
+		// Twiddles from a table rather than a running product, which drifts on long transforms
+		double[] cos = new double[n / 2];
+		double[] sin = new double[n / 2];
+		for (int j = 0; j < n / 2; j++) {
+			double ang = 2 * Math.PI * j / n;
+			cos[j] = Math.cos(ang);
+			sin[j] = inverse ? Math.sin(ang) : -Math.sin(ang);
+		}
+		for (int len = 2; len <= n; len <<= 1) {
+			int stride = n / len;
+			for (int i = 0; i < n; i += len) {
+				for (int j = 0; j < len / 2; j++) {
+					double cr = cos[j * stride], ci = sin[j * stride];
+					int u = i + j, v = i + j + len / 2;
+					double xr = re[v] * cr - im[v] * ci;
+					double xi = re[v] * ci + im[v] * cr;
+					re[v] = re[u] - xr; im[v] = im[u] - xi;
+					re[u] += xr; im[u] += xi;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,295 @@
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+// RainLang --server: a JVM that stays up and runs scripts for RainClient, so a job doesn't pay for JVM
+// startup, class loading, JIT warm-up and parsing the standard library each time. Each connection is one
+// run of the command line in a fresh engine, with the client's options, working directory, stdin, stdout
+// and stderr, and its exit status sent back. Scripts share nothing but the standard library's syntax tree.
+//
+// Over a Unix domain socket, integers big-endian, strings a u32 byte length then UTF-8 bytes:
+//   request   u32 version, string working directory, string console charset, u32 argc, string[argc] args
+//   stdin     sent only for the prompt, chunks of u32 length then bytes, a length of 0 ends it
+//   response  frames of u8 kind: OUT or ERR then u32 length and the bytes, EXIT then u32 status, last
+final class RainServer {
+	static final int VERSION = 1;
+	static final int OUT = 1;
+	static final int ERR = 2;
+	static final int EXIT = 3;
+
+	// Per user, so two users' servers don't collide
+	static Path defaultSocket() {
+		return Paths.get(System.getProperty("java.io.tmpdir"), "rainlang-" + System.getProperty("user.name") + ".sock");
+	}
+
+	// Runs until the JVM is stopped, returns only if it can't start
+	static int serve(String[] args) throws IOException {
+		Path socket = defaultSocket();
+		int jobs = Runtime.getRuntime().availableProcessors();
+		for (String arg : args) {
+			if (arg.equals("--server")) continue;
+			if (arg.startsWith("--server=")) {
+				socket = Paths.get(arg.substring("--server=".length()));
+			} else if (arg.startsWith("--jobs=")) {
+				try {
+					jobs = Integer.parseInt(arg.substring("--jobs=".length()));
+				} catch (NumberFormatException e) {
+					jobs = 0;
+				}
+				if (jobs <= 0) {
+					System.err.println("Error: --jobs needs a positive number - " + arg);
+					return RainLang.ERR_INVALID_USAGE;
+				}
+			} else {
+				// Script options come from each client
+				System.err.println("Error: --server only takes --jobs=<n>, not " + arg);
+				return RainLang.ERR_INVALID_USAGE;
+			}
+		}
+
+		// Parse the standard library and load the interpreter's classes before the first client
+		try (RainEngine warm = new RainEngine(OutputSink.stream(OutputStream.nullOutputStream(), StandardCharsets.UTF_8), ErrorReporter.STDERR)) {
+			if (!warm.loadStdlib()) return RainLang.ERR_SOURCE_CODE_ERROR;
+		}
+
+		ServerSocketChannel server;
+		try {
+			server = bind(socket);
+		} catch (IOException e) {
+			System.err.println("Error: " + e.getMessage());
+			return RainLang.ERR_SERVER_UNAVAILABLE;
+		}
+		AtomicInteger threads = new AtomicInteger();
+		ExecutorService workers = Executors.newFixedThreadPool(jobs, r -> new Thread(r, "rainlang-job-" + threads.incrementAndGet()));
+		System.err.println("RainLang server on " + socket + ", running " + jobs + " scripts at a time");
+		while (true) {
+			SocketChannel client = server.accept();
+			workers.execute(() -> job(client));
+		}
+	}
+
+	private static ServerSocketChannel bind(Path socket) throws IOException {
+		UnixDomainSocketAddress address = UnixDomainSocketAddress.of(socket);
+		if (Files.exists(socket)) {
+			if (listening(address)) throw new IOException("A server is already running on " + socket);
+			// Left behind by a server that was killed
+			Files.delete(socket);
+		}
+		ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		// Clients run scripts as this user, so only this user may connect. The socket is bound in a
+		// directory only this user can enter and moved into place once it is locked down.
+		Path target = socket.toAbsolutePath();
+		Path dir;
+		try {
+			dir = Files.createTempDirectory(target.getParent(), ".rainlang-",
+				PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+		} catch (UnsupportedOperationException e) {
+			// Not a POSIX file system, the socket keeps the directory's permissions
+			dir = null;
+		}
+		try {
+			if (dir == null) {
+				server.bind(address);
+			} else {
+				Path bound = dir.resolve("socket");
+				try {
+					server.bind(UnixDomainSocketAddress.of(bound));
+					Files.setPosixFilePermissions(bound, PosixFilePermissions.fromString("rw-------"));
+					Files.move(bound, target, StandardCopyOption.ATOMIC_MOVE);
+				} finally {
+					Files.deleteIfExists(bound);
+					Files.delete(dir);
+				}
+			}
+		} catch (IOException e) {
+			server.close();
+			throw e;
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				Files.deleteIfExists(socket);
+			} catch (IOException e) {
+				// Replaced as stale by the next server
+			}
+		}));
+		return server;
+	}
+
+	// Whether a server answers on the address
+	private static boolean listening(UnixDomainSocketAddress address) throws IOException {
+		SocketChannel probe;
+		try {
+			probe = SocketChannel.open(address);
+		} catch (SocketException e) {
+			return false;
+		}
+		probe.close();
+		return true;
+	}
+
+	// One client's run of the command line. A client that goes away cancels the run, so its worker
+	// is free for the next one: a write to it fails, or for a script, its end of the socket closes.
+	private static void job(SocketChannel channel) {
+		try (channel) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+			Frames frames = new Frames(new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel))));
+			if (in.readInt() != VERSION) {
+				frames.write(ERR, "Error: The client and server are from different builds\n".getBytes(StandardCharsets.UTF_8));
+				frames.exit(RainLang.ERR_SERVER_UNAVAILABLE);
+				return;
+			}
+			Path directory = Paths.get(readString(in));
+			Charset charset = charset(readString(in));
+			String[] args = new String[in.readInt()];
+			for (int i = 0; i < args.length; i++) args[i] = readString(in);
+
+			PrintStream out = new PrintStream(frames.stream(OUT), true, charset);
+			PrintStream err = new PrintStream(frames.stream(ERR), true, charset);
+			int status;
+			try {
+				RainLang cli = new RainLang(directory, new Stdin(in), out, err, OutputSink.stream(frames.stream(OUT), charset));
+				frames.gone = cli::cancel;
+				if (!prompt(Arrays.asList(args))) watch(channel, cli);
+				status = cli.run(args);
+			} catch (RainCancelled e) {
+				// No one left to send the status to
+				return;
+			} catch (Throwable e) {
+				// What the command line's JVM would have died of, the server carries on
+				e.printStackTrace(err);
+				status = 1;
+			}
+			out.flush();
+			err.flush();
+			frames.exit(status);
+		} catch (IOException e) {
+			// The client went away, there is no one to tell
+		}
+	}
+
+	// A script's client sends nothing after the request, so the socket only reads again once it closes
+	private static void watch(SocketChannel channel, RainLang cli) {
+		Thread watcher = new Thread(() -> {
+			ByteBuffer buffer = ByteBuffer.allocate(1);
+			try {
+				while (channel.read(buffer.clear()) >= 0) {
+					// Nothing is expected, keep waiting for the end
+				}
+			} catch (IOException e) {
+				// Closed by the job as it finished, or reset by the client
+			}
+			// Harmless once the run has finished
+			cli.cancel();
+		}, "rainlang-watch");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	// Whether these arguments run the prompt rather than a script
+	static boolean prompt(List<String> args) {
+		for (String arg : args) if (!arg.startsWith("--")) return false;
+		return true;
+	}
+
+	private static Charset charset(String name) {
+		try {
+			return Charset.forName(name);
+		} catch (IllegalArgumentException e) {
+			return StandardCharsets.UTF_8;
+		}
+	}
+
+	static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	// The response, written from whichever thread prints, ensemble members included
+	private static final class Frames {
+		private final DataOutputStream out;
+		// Told when a write fails, the client has gone
+		volatile Runnable gone = () -> {};
+
+		Frames(DataOutputStream out) {
+			this.out = out;
+		}
+
+		synchronized void write(int kind, byte[] b, int off, int len) throws IOException {
+			try {
+				out.writeByte(kind);
+				out.writeInt(len);
+				out.write(b, off, len);
+				out.flush();
+			} catch (IOException e) {
+				gone.run();
+				throw e;
+			}
+		}
+
+		void write(int kind, byte[] b) throws IOException {
+			write(kind, b, 0, b.length);
+		}
+
+		synchronized void exit(int status) throws IOException {
+			out.writeByte(EXIT);
+			out.writeInt(status);
+			out.flush();
+		}
+
+		OutputStream stream(int kind) {
+			return new OutputStream() {
+				@Override public void write(int b) throws IOException {
+					Frames.this.write(kind, new byte[] { (byte) b });
+				}
+				@Override public void write(byte[] b, int off, int len) throws IOException {
+					if (len > 0) Frames.this.write(kind, b, off, len);
+				}
+			};
+		}
+	}
+
+	// The client's stdin as the prompt reads it
+	private static final class Stdin extends InputStream {
+		private final DataInputStream in;
+		private int remaining = 0;
+		private boolean ended = false;
+
+		Stdin(DataInputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] one = new byte[1];
+			return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) return 0;
+			while (remaining == 0) {
+				if (ended) return -1;
+				remaining = in.readInt();
+				ended = remaining == 0;
+			}
+			int n = in.read(b, off, Math.min(len, remaining));
+			if (n < 0) throw new EOFException("The client closed its input");
+			remaining -= n;
+			return n;
+		}
+	}
+}
@@ -38,8 +38,11 @@ public class Scanner {
 		keywords.put("None", TokenType.NONE);
 	}
 
-	public Scanner(String source) {
+	private final ErrorReporter errors;
+
+	public Scanner(String source, ErrorReporter errors) {
 		this.source = source;
+		this.errors = errors;
 	}
 	public List<Token> tokenise() {
 		while (!isAtEnd()) {
@@ -103,7 +106,7 @@ public class Scanner {
 				} else if (isAlpha(c) || c == '%') {
 					handleIdentifier();
 				} else {	
-					RainLang.error(line, "Unexpected character \"" + c + "\"");
+					errors.error(line, "Unexpected character \"" + c + "\"");
 				}
 				break;
 		}
@@ -155,7 +158,7 @@ public class Scanner {
 			advance();
 		}
 		if (isAtEnd()) {
-			RainLang.error(line, "Unterminated string.");
+			errors.error(line, "Unterminated string.");
 			return;
 		}
 		// Closing "
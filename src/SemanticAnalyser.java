@@ -20,6 +20,13 @@ class SemanticAnalyser implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
 		ClassInfo(String name) { this.name = name; }
 	}
 	private final Map<String, ClassInfo> classes = new HashMap<>();
+	private final CallResolution calls;
+	private final ErrorReporter errors;
+
+	SemanticAnalyser(CallResolution calls, ErrorReporter errors) {
+		this.calls = calls;
+		this.errors = errors;
+	}
 
 	void analyse(List<Stmt> program) {
 		if (firstEnter) {
@@ -40,7 +47,7 @@ class SemanticAnalyser implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
 		Type declared = resolveTypeNode(stmt.type);
 		Type init = visit(stmt.initializer);
 		if (!isAssignable(init, declared)) {
-			RainLang.error(stmt.type.name.line,
+			errors.error(stmt.type.name.line,
 				"Cannot assign " + init + " to variable '" + stmt.name.lexeme + "' of type " + declared + ".");
 		}
 		env.define(stmt.name.lexeme, declared);
@@ -135,7 +142,7 @@ class SemanticAnalyser implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitBreakStmt(Stmt.Break stmt) {
 		if (loopDepth == 0) {
-			RainLang.error(stmt.keyword.line, "break used outside of a loop.");
+			errors.error(stmt.keyword.line, "break used outside of a loop.");
 		}
 		return null;
 	}
@@ -143,7 +150,7 @@ class SemanticAnalyser implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitContinueStmt(Stmt.Continue stmt) {
 		if (loopDepth == 0) {
-			RainLang.error(stmt.keyword.line, "continue used outside of a loop.");
+			errors.error(stmt.keyword.line, "continue used outside of a loop.");
 		}
 		return null;
 	}
@@ -153,12 +160,12 @@ class SemanticAnalyser implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
 		Type expected = returnStack.isEmpty() ? Type.none() : returnStack.peek();
 		if (stmt.value == null) {
 			if (!expected.equals(Type.none())) {
-				RainLang.error(stmt.keyword.line, "Return type mismatch: expected " + expected + " but returned None.");
+				errors.error(stmt.keyword.line, "Return type mismatch: expected " + expected + " but returned None.");
 			}
 		} else {
 			Type actual = visit(stmt.value);
 			if (!isAssignable(actual, expected)) {
-				RainLang.error(stmt.keyword.line, "Return type mismatch: expected " + expected + " but got " + actual + ".");
+				errors.error(stmt.keyword.line, "Return type mismatch: expected " + expected + " but got " + actual + ".");
 			}
 		}
 		return null;
@@ -176,7 +183,7 @@ class SemanticAnalyser implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
 		if (stmt.initializer != null) {
 			Type init = visit(stmt.initializer);
 			if (!isAssignable(init, declared)) {
-				RainLang.error(stmt.type.name.line,
+				errors.error(stmt.type.name.line,
 					"Cannot assign " + init + " to field '" + stmt.name.lexeme + "' of type " + declared + ".");
 			}
 		}
@@ -238,7 +245,7 @@ class SemanticAnalyser implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
 			case "%":
 				return Type.val();
 			default:
-				RainLang.error(unit.line, "Unknown literal unit '" + u + "'.");
+				errors.error(unit.line, "Unknown literal unit '" + u + "'.");
 				return Type.unknown();
 		}
 	}
@@ -262,23 +269,29 @@ class SemanticAnalyser implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
 	@Override
 	public Type visitVariableExpr(Expr.Variable expr) {
 		Type t = env.lookup(expr.name.lexeme);
-		if (t == null) {
-			RainLang.error(expr.name.line, "Undefined variable '" + expr.name.lexeme + "'.");
+		if (t != null) return t;
+
+		// A bare function name is a function value, as long as it names a single overload
+		List<Type> overloads = env.lookupFunctionOverloads(expr.name.lexeme);
+		if (overloads != null && overloads.size() == 1) return overloads.get(0);
+		if (overloads != null) {
+			errors.error(expr.name.line, "Ambiguous reference to overloaded function '" + expr.name.lexeme + "'.");
 			return Type.unknown();
 		}
-		return t;
+		errors.error(expr.name.line, "Undefined variable '" + expr.name.lexeme + "'.");
+		return Type.unknown();
 	}
 
 	@Override
 	public Type visitAssignExpr(Expr.Assign expr) {
 		Type target = env.lookup(expr.name.lexeme);
 		if (target == null) {
-			RainLang.error(expr.name.line, "Undefined variable '" + expr.name.lexeme + "'.");
+			errors.error(expr.name.line, "Undefined variable '" + expr.name.lexeme + "'.");
 			target = Type.unknown();
 		}
 		Type value = visit(expr.value);
 		if (!isAssignable(value, target)) {
-			RainLang.error(expr.name.line, "Cannot assign " + value + " to '" + expr.name.lexeme + "' of type " + target + ".");
+			errors.error(expr.name.line, "Cannot assign " + value + " to '" + expr.name.lexeme + "' of type " + target + ".");
 		}
 		return target;
 	}
@@ -319,15 +332,15 @@ class SemanticAnalyser implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
 				if (matches.size() == 1) {
 					int slot = matches.get(0);
 					Type chosen = candidates.get(slot);
-					CallResolution.bind(expr, fname, slot);
+					calls.bind(expr, fname, slot);
 					return chosen.returnType;
 				}
 				if (matches.isEmpty()) {
-					RainLang.error(getLine(expr), "No overload of '" + fname + "' matches argument types (" +
+					errors.error(getLine(expr), "No overload of '" + fname + "' matches argument types (" +
 							String.join(", ", argTypes.stream().map(Type::toString).toList()) + ").");
 					return Type.unknown();
 				}
-				RainLang.error(getLine(expr), "Ambiguous call to '" + fname + "' with argument types (" +
+				errors.error(getLine(expr), "Ambiguous call to '" + fname + "' with argument types (" +
 						String.join(", ", argTypes.stream().map(Type::toString).toList()) + ").");
 				return Type.unknown();
 			}
@@ -339,17 +352,17 @@ class SemanticAnalyser implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
 				if (ci != null && ci.ctor != null) {
 					List<Type> params = ci.ctor.params;
 					if (params.size() != argTypes.size()) {
-						RainLang.error(getLine(expr), "Expected " + params.size() + " arguments but got " + argTypes.size() + ".");
+						errors.error(getLine(expr), "Expected " + params.size() + " arguments but got " + argTypes.size() + ".");
 					} else {
 						for (int i = 0; i < params.size(); i++) {
 							if (!isAssignable(argTypes.get(i), params.get(i))) {
-								RainLang.error(getLine(expr.arguments.get(i)),
+								errors.error(getLine(expr.arguments.get(i)),
 									"Argument " + (i + 1) + " type mismatch: expected " + params.get(i) + " but got " + argTypes.get(i) + ".");
 							}
 						}
 					}
 				} else if (!argTypes.isEmpty()) {
-					RainLang.error(getLine(expr), "Expected 0 arguments but got " + argTypes.size() + ".");
+					errors.error(getLine(expr), "Expected 0 arguments but got " + argTypes.size() + ".");
 				}
 				return sym;
 			}
@@ -364,11 +377,11 @@ class SemanticAnalyser implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
 		if (calleeT.kind == Type.Kind.FUNCTION) {
 			List<Type> params = calleeT.paramTypes;
 			if (params.size() != argTypes.size()) {
-				RainLang.error(getLine(expr), "Expected " + params.size() + " arguments but got " + argTypes.size() + ".");
+				errors.error(getLine(expr), "Expected " + params.size() + " arguments but got " + argTypes.size() + ".");
 			} else {
 				for (int i = 0; i < params.size(); i++) {
 					if (!isAssignable(argTypes.get(i), params.get(i))) {
-						RainLang.error(getLine(expr.arguments.get(i)),
+						errors.error(getLine(expr.arguments.get(i)),
 							"Argument " + (i + 1) + " type mismatch: expected " + params.get(i) + " but got " + argTypes.get(i) + ".");
 					}
 				}
@@ -376,7 +389,7 @@ class SemanticAnalyser implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
 			return calleeT.returnType;
 		}
 
-		RainLang.error(getLine(expr.callee), "Attempted to call a non-callable expression of type " + calleeT + ".");
+		errors.error(getLine(expr.callee), "Attempted to call a non-callable expression of type " + calleeT + ".");
 		return Type.unknown();
 	}
 
@@ -390,7 +403,7 @@ class SemanticAnalyser implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
 			if ("length".equals(m)) return Type.val();
 			FnSig sig = arrayMethodSig(m, recv.element);
 			if (sig != null) return Type.function(sig.ret, sig.params);
-			RainLang.error(expr.name.line, "Unknown member '" + m + "' on array of " + recv.element + ".");
+			errors.error(expr.name.line, "Unknown member '" + m + "' on array of " + recv.element + ".");
 			return Type.unknown();
 		}
 
@@ -399,17 +412,17 @@ class SemanticAnalyser implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
 			if ("length".equals(m)) return Type.val();
 			FnSig sig = stringMethodSig(m);
 			if (sig != null) return Type.function(sig.ret, sig.params);
-			RainLang.error(expr.name.line, "Unknown member '" + m + "' on String.");
+			errors.error(expr.name.line, "Unknown member '" + m + "' on String.");
 			return Type.unknown();
 		}
 
 		if (recv.kind != Type.Kind.CLASS) {
-			RainLang.error(getLine(expr.object), "Property access requires a class instance, array, or string; got " + recv + ".");
+			errors.error(getLine(expr.object), "Property access requires a class instance, array, or string; got " + recv + ".");
 			return Type.unknown();
 		}
 		ClassInfo ci = classes.get(recv.name);
 		if (ci == null) {
-			RainLang.error(getLine(expr.object), "Unknown class '" + recv.name + "'.");
+			errors.error(getLine(expr.object), "Unknown class '" + recv.name + "'.");
 			return Type.unknown();
 		}
 		Type f = ci.fields.get(expr.name.lexeme);
@@ -417,7 +430,7 @@ class SemanticAnalyser implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
 		FnSig m = ci.methods.get(expr.name.lexeme);
 		if (m != null) return Type.function(m.ret, m.params);
 
-		RainLang.error(expr.name.line, "Unknown member '" + expr.name.lexeme + "' on class " + recv.name + ".");
+		errors.error(expr.name.line, "Unknown member '" + expr.name.lexeme + "' on class " + recv.name + ".");
 		return Type.unknown();
 	}
 
@@ -425,30 +438,30 @@ class SemanticAnalyser implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
 	public Type visitSetExpr(Expr.Set expr) {
 		Type recv = visit(expr.object);
 		if (recv.kind != Type.Kind.CLASS) {
-			RainLang.error(getLine(expr.object), "Field assignment requires a class instance, got " + recv + ".");
+			errors.error(getLine(expr.object), "Field assignment requires a class instance, got " + recv + ".");
 			visit(expr.value);
 			return Type.unknown();
 		}
 		ClassInfo ci = classes.get(recv.name);
 		if (ci == null) {
-			RainLang.error(getLine(expr.object), "Unknown class '" + recv.name + "'.");
+			errors.error(getLine(expr.object), "Unknown class '" + recv.name + "'.");
 			visit(expr.value);
 			return Type.unknown();
 		}
 		if (ci.methods.containsKey(expr.name.lexeme)) {
-			RainLang.error(expr.name.line, "Cannot assign to method '" + expr.name.lexeme + "'.");
+			errors.error(expr.name.line, "Cannot assign to method '" + expr.name.lexeme + "'.");
 			visit(expr.value);
 			return Type.unknown();
 		}
 		Type fieldT = ci.fields.get(expr.name.lexeme);
 		if (fieldT == null) {
-			RainLang.error(expr.name.line, "Unknown field '" + expr.name.lexeme + "' on class " + recv.name + ".");
+			errors.error(expr.name.line, "Unknown field '" + expr.name.lexeme + "' on class " + recv.name + ".");
 			visit(expr.value);
 			return Type.unknown();
 		}
 		Type v = visit(expr.value);
 		if (!isAssignable(v, fieldT)) {
-			RainLang.error(getLine(expr.value), "Cannot assign " + v + " to field '" + expr.name.lexeme + "' of type " + fieldT + ".");
+			errors.error(getLine(expr.value), "Cannot assign " + v + " to field '" + expr.name.lexeme + "' of type " + fieldT + ".");
 		}
 		return fieldT;
 	}
@@ -458,7 +471,7 @@ class SemanticAnalyser implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
 		Type arr = visit(expr.array);
 		Type idx = visit(expr.index);
 		if (arr.kind != Type.Kind.ARRAY) {
-			RainLang.error(getLine(expr.array), "Indexing requires an array, got " + arr + ".");
+			errors.error(getLine(expr.array), "Indexing requires an array, got " + arr + ".");
 			return Type.unknown();
 		}
 		requireVal(expr.index, idx, "Array index must be Val, got " + idx + ".");
@@ -471,12 +484,12 @@ class SemanticAnalyser implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
 		Type idx = visit(expr.index);
 		Type val = visit(expr.value);
 		if (arr.kind != Type.Kind.ARRAY) {
-			RainLang.error(getLine(expr.array), "Index assignment requires an array, got " + arr + ".");
+			errors.error(getLine(expr.array), "Index assignment requires an array, got " + arr + ".");
 			return Type.unknown();
 		}
 		requireVal(expr.index, idx, "Array index must be Val, got " + idx + ".");
 		if (!isAssignable(val, arr.element)) {
-			RainLang.error(getLine(expr.value), "Cannot assign " + val + " into array of " + arr.element + ".");
+			errors.error(getLine(expr.value), "Cannot assign " + val + " into array of " + arr.element + ".");
 		}
 		return arr.element;
 	}
@@ -490,7 +503,7 @@ class SemanticAnalyser implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
 		for (int i = 1; i < expr.elements.size(); i++) {
 			Type t = visit(expr.elements.get(i));
 			if (!first.equals(t)) {
-				RainLang.error(getLine(expr.elements.get(i)),
+				errors.error(getLine(expr.elements.get(i)),
 					"Array elements must have uniform type; found " + first + " and " + t + ".");
 			}
 		}
@@ -500,7 +513,7 @@ class SemanticAnalyser implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
 	@Override
 	public Type visitThisExpr(Expr.This expr) {
 		if (classStack.isEmpty()) {
-			RainLang.error(expr.keyword.line, "Cannot use 'this' outside of a class.");
+			errors.error(expr.keyword.line, "Cannot use 'this' outside of a class.");
 			return Type.unknown();
 		}
 		return classStack.peek();
@@ -539,13 +552,13 @@ class SemanticAnalyser implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
 	}
 
 	private void requireBool(Expr node, Type t, String msg) {
-		if (!t.equals(Type.bool())) RainLang.error(getLine(node), msg);
+		if (!t.equals(Type.bool())) errors.error(getLine(node), msg);
 	}
 	private void requireVal(Expr node, Type t, String msg) {
-		if (!t.equals(Type.val())) RainLang.error(getLine(node), msg);
+		if (!t.equals(Type.val())) errors.error(getLine(node), msg);
 	}
 	private void requireNumeric(Expr node, Type t, String msg) {
-		if (!t.isNumericDomain()) RainLang.error(getLine(node), msg);
+		if (!t.isNumericDomain()) errors.error(getLine(node), msg);
 	}
 
 	private int getLine(Expr node) {
@@ -577,19 +590,19 @@ class SemanticAnalyser implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
 			case TokenType.LESS:
 			case TokenType.LESS_EQUAL:
 				if (!L.isNumericDomain() || !R.isNumericDomain() || !L.equals(R)) {
-					RainLang.error(op.line, "Relational operators require matching numeric types; got " + L + " and " + R + ".");
+					errors.error(op.line, "Relational operators require matching numeric types; got " + L + " and " + R + ".");
 				}
 				return Type.bool();
 
 			case TokenType.PLUS:
 				if (L.equals(Type.string())) {
 					if (R.equals(Type.string()) || R.isNumericDomain()) return Type.string();
-					RainLang.error(op.line, "String '+' only supports String or numeric domains on RHS; got " + R + ".");
+					errors.error(op.line, "String '+' only supports String or numeric domains on RHS; got " + R + ".");
 					return Type.string();
 				}
 				if (L.kind == Type.Kind.ARRAY && R.kind == Type.Kind.ARRAY) {
 					if (!L.element.equals(R.element)) {
-						RainLang.error(op.line, "Array '+' requires same element type; got " + L + " and " + R + ".");
+						errors.error(op.line, "Array '+' requires same element type; got " + L + " and " + R + ".");
 					}
 					return Type.arrayOf(L.element);
 				}
@@ -597,7 +610,7 @@ class SemanticAnalyser implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
 				if (L.equals(Type.area())  && R.equals(Type.area()))  return Type.area();
 				if (L.equals(Type.rain())  && R.equals(Type.rain()))  return Type.rain();
 				if (L.equals(Type.val())   && R.equals(Type.val()))   return Type.val();
-				RainLang.error(op.line, "Invalid operator '+' between " + L + " and " + R + ".");
+				errors.error(op.line, "Invalid operator '+' between " + L + " and " + R + ".");
 				return Type.unknown();
 
 			case TokenType.MINUS:
@@ -605,7 +618,7 @@ class SemanticAnalyser implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
 				if (L.equals(Type.area())  && R.equals(Type.area()))  return Type.area();
 				if (L.equals(Type.rain())  && R.equals(Type.rain()))  return Type.rain();
 				if (L.equals(Type.val())   && R.equals(Type.val()))   return Type.val();
-				RainLang.error(op.line, "Invalid operator '-' between " + L + " and " + R + ".");
+				errors.error(op.line, "Invalid operator '-' between " + L + " and " + R + ".");
 				return Type.unknown();
 
 			case TokenType.STAR:
@@ -613,14 +626,14 @@ class SemanticAnalyser implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
 				if (R.equals(Type.val()) && L.isNumericDomain()) return L;
 				if ((L.equals(Type.area()) && R.equals(Type.rain())) || (L.equals(Type.rain()) && R.equals(Type.area())))
 					return Type.volume();
-				RainLang.error(op.line, "Invalid operator '*' between " + L + " and " + R + ".");
+				errors.error(op.line, "Invalid operator '*' between " + L + " and " + R + ".");
 				return Type.unknown();
 
 			case TokenType.SLASH:
 				if (R.equals(Type.val()) && L.isNumericDomain()) return L;
 				if (L.equals(Type.volume()) && R.equals(Type.rain())) return Type.area();
 				if (L.equals(Type.volume()) && R.equals(Type.area())) return Type.rain();
-				RainLang.error(op.line, "Invalid operator '/' between " + L + " and " + R + ".");
+				errors.error(op.line, "Invalid operator '/' between " + L + " and " + R + ".");
 				return Type.unknown();
 
 			default:
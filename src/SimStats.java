@@ -0,0 +1,119 @@
+import java.io.*;
+import java.util.*;
+
+// Counters and phase times for simulate(), one set for the last call and one for the whole run.
+// Stepping phases are timed once per worker batch a day and summed over workers, so with catchments
+// stepped in parallel they can add up to more than the wall time.
+final class SimStats {
+	// The order __sim_stats() returns values in, the stdlib's SimStats class reads them back by position
+	static final String[] NAMES = {
+		"calls", "days", "skipped_days", "bodies", "edges", "components", "layouts",
+		"distributed", "edges_visited", "equalisations", "rain_body_days", "rain_schedules", "actions",
+		"prepare_ms", "sources_ms", "rain_ms", "propagation_ms", "sinks_ms", "history_ms", "rules_ms", "cleanup_ms", "total_ms"
+	};
+
+	long calls;
+	// Days advanced, skipped ones included
+	long days;
+	long skipped;
+	// Size of the network as last simulated
+	long bodies;
+	long edges;
+	long components;
+	// Times the network was laid out again because the graph changed
+	long layouts;
+	// Bodies taken off the active set, outflow edges they looked at, and parent/child equalisations
+	long distributed;
+	long visited;
+	long equalisations;
+	// Bodies rained on, summed over days, and bodies with rain still to come when a call started,
+	// the most of any call in the totals
+	long rainBodies;
+	long rainSchedules;
+	// when() and at_day() actions run
+	long actions;
+
+	// Nanoseconds per phase, total is the wall time of the calls
+	long prepare;
+	long sources;
+	long rain;
+	long propagation;
+	long sinks;
+	long history;
+	long rules;
+	long cleanup;
+	long total;
+
+	void add(SimStats s) {
+		calls += s.calls;
+		days += s.days;
+		skipped += s.skipped;
+		bodies = s.bodies;
+		edges = s.edges;
+		components = s.components;
+		layouts += s.layouts;
+		rainBodies += s.rainBodies;
+		rainSchedules = Math.max(rainSchedules, s.rainSchedules);
+		actions += s.actions;
+		prepare += s.prepare;
+		rules += s.rules;
+		cleanup += s.cleanup;
+		history += s.history;
+		total += s.total;
+		addStep(s);
+	}
+
+	// What a worker batch collected while stepping
+	void addStep(SimStats s) {
+		distributed += s.distributed;
+		visited += s.visited;
+		equalisations += s.equalisations;
+		sources += s.sources;
+		rain += s.rain;
+		propagation += s.propagation;
+		sinks += s.sinks;
+	}
+
+	void clearStep() {
+		distributed = visited = equalisations = 0;
+		sources = rain = propagation = sinks = 0;
+	}
+
+	private long[] raw() {
+		return new long[] {
+			calls, days, skipped, bodies, edges, components, layouts,
+			distributed, visited, equalisations, rainBodies, rainSchedules, actions,
+			prepare, sources, rain, propagation, sinks, history, rules, cleanup, total
+		};
+	}
+
+	// Every value in NAMES order as Vals, times in milliseconds
+	List<Object> values() {
+		long[] v = raw();
+		List<Object> out = new ArrayList<>(v.length);
+		for (int i = 0; i < v.length; i++) {
+			double x = NAMES[i].endsWith("_ms") ? v[i] / 1e6 : v[i];
+			out.add(new NumericValue(Type.val(), x));
+		}
+		return out;
+	}
+
+	// The --sim-stats summary
+	void print(PrintStream out) {
+		out.println();
+		out.printf(Locale.ROOT, "Simulation: %d simulate() calls, %d days (%d skipped), %d bodies, %d edges, %d components%n",
+			calls, days, skipped, bodies, edges, components);
+		out.printf(Locale.ROOT, "%14s %12s %7s%n", "phase", "ms", "%");
+		String[] phases = { "prepare", "sources", "rain", "propagation", "sinks", "history", "rules", "cleanup" };
+		long[] times = { prepare, sources, rain, propagation, sinks, history, rules, cleanup };
+		for (int i = 0; i < phases.length; i++) {
+			out.printf(Locale.ROOT, "%14s %12.3f %6.1f%%%n", phases[i], times[i] / 1e6, total == 0 ? 0.0 : 100.0 * times[i] / total);
+		}
+		out.printf(Locale.ROOT, "%14s %12.3f%n", "total", total / 1e6);
+		out.printf(Locale.ROOT, "Layouts built %d, bodies distributed %d, edges visited %d, equalisations %d%n",
+			layouts, distributed, visited, equalisations);
+		out.printf(Locale.ROOT, "Rain on %d body-days, %d bodies with rain scheduled, %d rule and at_day actions%n",
+			rainBodies, rainSchedules, actions);
+		out.flush();
+	}
+}
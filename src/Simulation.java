@@ -0,0 +1,1316 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+// Native day stepper behind the stdlib's simulate().
+// Bodies are grouped into weakly connected components which are tracked as edges come and go,
+// hydrologically independent catchments are then stepped on separate worker threads each day.
+class Simulation {
+	// Below this many bodies the fork/join overhead outweighs the work
+	private static final int PARALLEL_MIN_BODIES = 256;
+
+	private final Interpreter interpreter;
+
+	// Component label of every registered body, members are kept per label for small-to-large merges
+	private final Map<RainInstance, Integer> component = new IdentityHashMap<>();
+	private final Map<Integer, List<RainInstance>> members = new HashMap<>();
+	private int nextComponent = 0;
+	private boolean labelsStale = false;
+
+	// Topology is cached until the graph changes, or a gate change reorders it
+	private Layout layout = null;
+
+	// Per-call body state, indexed by layout position
+	private double[] volume = new double[0];
+	private double[] sources = new double[0];
+	private double[] sinks = new double[0];
+	private double[] area = new double[0];
+	private double[] rate = new double[0];
+	// Gate flag per edge, closed edges keep their place in the edge arrays but are skipped when stepping
+	private boolean[] open = new boolean[0];
+	private int[] slot = new int[0];
+
+	// Where body history is kept, on the heap unless a run asks for a mapped file
+	private HistoryStore history = new MemoryHistory();
+
+	// Active set. Bodies whose distribution could move water today sit in their component's min-heap
+	// of layout positions (a slice of 'active' starting at the component's first body), bodies to look
+	// at tomorrow in its slice of 'later'. Anything else is settled: it has no water, or every open
+	// child is at least as high, and stays that way until its own volume rises or a child's falls.
+	private boolean[] queued = new boolean[0];
+	private boolean[] pending = new boolean[0];
+	private int[] active = new int[0];
+	private int[] later = new int[0];
+	private int[] activeSize = new int[0];
+	private int[] laterSize = new int[0];
+	// Some volume in the component moved today, though the day may still have ended where it began
+	private boolean[] changed = new boolean[0];
+	// On a day without rain, each component's volumes as it started the day, to spot a fixed point
+	private double[] before = new double[0];
+	private boolean dryToday;
+	// Per component, bodies with sources, and bodies the sink phase can change
+	private int[][] sourced = new int[0][];
+	private int[][] drained = new int[0][];
+	// Bodies the last phase changed, each component in its own slice like 'active'
+	private int[] moved = new int[0];
+	private static final Phases PHASES = Phases.BEST;
+	// Step every body today rather than the active set
+	private boolean fullDay;
+	// The active set left by the last run is still valid for this layout
+	private Layout carried = null;
+
+	// Precomputed rain inflow per body, and per-call views of it by layout position
+	private final Map<RainInstance, RainSchedule> rain = new IdentityHashMap<>();
+	private RainSchedule[] schedule = new RainSchedule[0];
+	private long today;
+	// Every day with rain, with the bodies it falls on, so a day only looks at its own rain
+	private final DayWheel<RainInstance> rainDays = new DayWheel<>();
+	// Positions with rain today in order, component c's are wetToday[wetFrom[c] .. wetTo[c]) if wetDay[c] is today
+	private final List<RainInstance> due = new ArrayList<>();
+	private int[] wetToday = new int[0];
+	private int wetCount = 0;
+	private long[] wetDay = new long[0];
+	private int[] wetFrom = new int[0];
+	private int[] wetTo = new int[0];
+
+	// at_day() actions by day
+	private final DayWheel<RainFunction> calls = new DayWheel<>();
+
+	// Token used to report native errors
+	private Token site;
+
+	// Counters for the last simulate() call and for the whole run, and each worker batch's share of a day
+	private SimStats last = new SimStats();
+	private final SimStats total = new SimStats();
+	private SimStats[] work = new SimStats[0];
+	// distribute()'s per-parent arrays, one set per batch as batches run on their own workers
+	private Scratch[] scratch = new Scratch[0];
+
+	// Automatic checkpoint every checkpointEvery simulated days, 0 for never
+	private long checkpointEvery = 0;
+	private Path checkpointPath;
+
+	// when() rules in registration order, and each one's body position in the current layout
+	private final List<Rule> rules = new ArrayList<>();
+	private int[] rulePos = new int[0];
+	// A rule action is running, it may change anything but cannot simulate
+	private boolean firing = false;
+
+	Simulation(Interpreter interpreter) {
+		this.interpreter = interpreter;
+	}
+
+	// Bodies in component-contiguous order, each component in topological order
+	private static final class Layout {
+		final RainInstance[] bodies;
+		final Map<RainInstance, Integer> index;
+		// componentStart[c] .. componentStart[c + 1] are the bodies of component c
+		final int[] componentStart;
+		// edgeStart[i] .. edgeStart[i + 1] index edgeChild for body i's outflows
+		final int[] edgeStart;
+		final int[] edgeChild;
+		// inStart[i] .. inStart[i + 1] index inParent for body i's registered inflows
+		final int[] inStart;
+		final int[] inParent;
+		final int[] componentOf;
+		// Groups of components handed to one worker each
+		final int[][] batches;
+		// The gates the order was worked out from
+		final boolean[] gates;
+
+		Layout(RainInstance[] bodies, Map<RainInstance, Integer> index, int[] componentStart, int[] edgeStart, int[] edgeChild, int[][] batches) {
+			this.bodies = bodies;
+			this.index = index;
+			this.componentStart = componentStart;
+			this.edgeStart = edgeStart;
+			this.edgeChild = edgeChild;
+			this.batches = batches;
+
+			int n = bodies.length;
+			inStart = new int[n + 1];
+			for (int c : edgeChild) if (c >= 0) inStart[c + 1]++;
+			for (int i = 0; i < n; i++) inStart[i + 1] += inStart[i];
+			inParent = new int[inStart[n]];
+			int[] fill = Arrays.copyOf(inStart, n);
+			for (int p = 0; p < n; p++) {
+				for (int e = edgeStart[p]; e < edgeStart[p + 1]; e++) {
+					if (edgeChild[e] >= 0) inParent[fill[edgeChild[e]]++] = p;
+				}
+			}
+			componentOf = new int[n];
+			for (int c = 0; c + 1 < componentStart.length; c++) {
+				Arrays.fill(componentOf, componentStart[c], componentStart[c + 1], c);
+			}
+			gates = new boolean[edgeChild.length];
+			takeGates();
+		}
+
+		void takeGates() {
+			for (int i = 0; i < bodies.length; i++) {
+				List<Object> g = list(bodies[i].getField("outflow_open"));
+				for (int e = edgeStart[i]; e < edgeStart[i + 1]; e++) gates[e] = (Boolean) g.get(e - edgeStart[i]);
+			}
+		}
+
+		// Whether any gate has been opened or closed since the order was worked out
+		boolean gatesMoved() {
+			for (int i = 0; i < bodies.length; i++) {
+				List<Object> g = list(bodies[i].getField("outflow_open"));
+				for (int e = edgeStart[i]; e < edgeStart[i + 1]; e++) {
+					if (gates[e] != (Boolean) g.get(e - edgeStart[i])) return true;
+				}
+			}
+			return false;
+		}
+
+		int componentCount() { return componentStart.length - 1; }
+	}
+
+	enum Condition { ABOVE, BELOW, CROSSING }
+
+	// Calls action when a body's volume goes above or below threshold, or crosses it either way
+	private static final class Rule {
+		final RainInstance body;
+		final Condition condition;
+		final double threshold;
+		final RainFunction action;
+		// Whether the condition held when last checked, null before the first check
+		Boolean last;
+
+		Rule(RainInstance body, Condition condition, double threshold, RainFunction action) {
+			this.body = body;
+			this.condition = condition;
+			this.threshold = threshold;
+			this.action = action;
+		}
+
+		boolean holds(double v) {
+			return condition == Condition.BELOW ? v < threshold : v > threshold;
+		}
+
+		// Edge triggered: above and below fire on becoming true (or being true at the first check),
+		// crossing on any change after the first check
+		boolean fires(double v) {
+			boolean now = holds(v);
+			if (condition == Condition.CROSSING) return last != null && last != now;
+			return now && !Boolean.TRUE.equals(last);
+		}
+	}
+
+	void addRule(RainInstance body, Condition condition, double threshold, RainFunction action) {
+		rules.add(new Rule(body, condition, threshold, action));
+	}
+
+	// Storms of depths[j] on day start + j, each spread over the following days by kernel
+	void addRain(RainInstance body, long start, double[] depths, double[] kernel) {
+		RainSchedule schedule = rain.computeIfAbsent(body, b -> new RainSchedule(start));
+		schedule.add(start, depths, kernel, num(body.getField("area")));
+		if (depths.length == 0 || kernel.length == 0) return;
+		for (long d = start; d < start + depths.length + kernel.length - 1; d++) {
+			if (schedule.at(d) != 0) rainDays.add(d, body);
+		}
+	}
+
+	// Call fn() before day 'day' is simulated
+	void addCall(long day, RainFunction fn) {
+		calls.add(day, fn);
+	}
+
+	// Must be chosen before any body is created
+	void useHistory(HistoryStore store) throws IOException {
+		history.close();
+		history = store;
+	}
+
+	// With the engine
+	void close() throws IOException {
+		history.close();
+	}
+
+	// A new history column in this engine's store, holding a copy of values
+	HistoryColumn historyColumn(double[] values) {
+		return new HistoryColumn(history, history.open(values));
+	}
+
+	void checkpointEvery(long days, Path path) {
+		checkpointEvery = days;
+		checkpointPath = path;
+	}
+
+	// Days fast-forwarded because nothing would have changed
+	long skippedDays() {
+		return total.skipped;
+	}
+
+	// What the engine holds outside script values: rain schedules, per-body and per-edge arrays, the layout
+	// and the calendars. History is counted with the bodies' __history.
+	void account(MemoryReport report) {
+		long bytes = 0;
+		for (RainSchedule r : rain.values()) bytes += r.bytes();
+		// Identity maps take about four table slots an entry
+		report.add("rain schedule", rain.size(), bytes + MemoryReport.array(4L * rain.size(), 4));
+
+		int n = volume.length;
+		bytes = 5 * MemoryReport.array(n, 8) + MemoryReport.array(open.length, 1) + MemoryReport.array(slot.length, 4);
+		bytes += MemoryReport.array(queued.length, 1) + MemoryReport.array(pending.length, 1) + MemoryReport.array(changed.length, 1);
+		bytes += MemoryReport.array(active.length, 4) + MemoryReport.array(later.length, 4) + MemoryReport.array(moved.length, 4);
+		bytes += MemoryReport.array(activeSize.length, 4) + MemoryReport.array(laterSize.length, 4) + MemoryReport.array(before.length, 8);
+		bytes += MemoryReport.array(schedule.length, 4) + MemoryReport.array(wetToday.length, 4);
+		bytes += MemoryReport.array(wetDay.length, 8) + MemoryReport.array(wetFrom.length, 4) + MemoryReport.array(wetTo.length, 4);
+		for (int[] s : sourced) bytes += MemoryReport.array(s.length, 4);
+		for (int[] d : drained) bytes += MemoryReport.array(d.length, 4);
+		bytes += MemoryReport.array(4L * component.size(), 4);
+		report.add("body state", n, bytes);
+
+		if (layout != null) {
+			Layout L = layout;
+			bytes = MemoryReport.array(L.bodies.length, 4) + MemoryReport.array(4L * L.index.size(), 4);
+			bytes += MemoryReport.array(L.componentStart.length, 4) + MemoryReport.array(L.componentOf.length, 4);
+			bytes += MemoryReport.array(L.edgeStart.length, 4) + MemoryReport.array(L.edgeChild.length, 4);
+			bytes += MemoryReport.array(L.gates.length, 1);
+			bytes += MemoryReport.array(L.inStart.length, 4) + MemoryReport.array(L.inParent.length, 4);
+			for (int[] b : L.batches) bytes += MemoryReport.array(b.length, 4);
+			report.add("layout", 1, bytes);
+		}
+		report.add("calendar entry", rainDays.entries() + calls.entries(), rainDays.bytes() + calls.bytes());
+	}
+
+	SimStats stats(boolean whole) {
+		return whole ? total : last;
+	}
+
+	RainSchedule rainOn(RainInstance body) {
+		return rain.get(body);
+	}
+
+	// Forget every body and schedule, before a checkpoint is restored
+	void reset() {
+		for (Object o : list(interpreter.globals.getLocal("__BODY_REGISTRY"))) release((RainInstance) o);
+		component.clear();
+		members.clear();
+		rain.clear();
+		rainDays.clear();
+		// Rules and scheduled calls belong to the state being replaced
+		rules.clear();
+		calls.clear();
+		labelsStale = true;
+		layout = null;
+	}
+
+	void restoreRain(RainInstance body, RainSchedule schedule) {
+		rain.put(body, schedule);
+		schedule(body, schedule);
+	}
+
+	// Put every wet day of a whole schedule on the calendar
+	private void schedule(RainInstance body, RainSchedule schedule) {
+		for (long d = schedule.origin(); d < schedule.end(); d++) {
+			if (schedule.at(d) != 0) rainDays.add(d, body);
+		}
+	}
+
+	// Refill freshly added bodies' history. Every registered body records every day, so histories
+	// end together and are appended day by day, each body joining once its own history starts.
+	void restoreHistory(List<RainInstance> bodies, double[][] values) {
+		int n = bodies.size();
+		int days = 0;
+		for (double[] v : values) days = Math.max(days, v.length);
+		int[] slotOf = new int[n];
+		for (int i = 0; i < n; i++) slotOf[i] = history(bodies.get(i)).slot;
+		int[] slots = new int[n];
+		double[] day = new double[n];
+		for (int d = 0; d < days; d++) {
+			int k = 0;
+			for (int i = 0; i < n; i++) {
+				int at = d - (days - values[i].length);
+				if (at < 0) continue;
+				slots[k] = slotOf[i];
+				day[k++] = values[i][at];
+			}
+			history.append(slots, day, k);
+		}
+	}
+
+	// Take over native state from the interpreter this one was forked from
+	void adopt(Simulation parent, UnaryOperator<Object> copy) {
+		for (Map.Entry<RainInstance, RainSchedule> e : parent.rain.entrySet()) {
+			RainInstance body = (RainInstance) copy.apply(e.getKey());
+			rain.put(body, e.getValue().copy());
+			schedule(body, rain.get(body));
+		}
+		parent.calls.forEach((fn, day) -> calls.add(day, (RainFunction) copy.apply(fn)));
+		for (Rule r : parent.rules) {
+			Rule out = new Rule((RainInstance) copy.apply(r.body), r.condition, r.threshold, (RainFunction) copy.apply(r.action));
+			out.last = r.last;
+			rules.add(out);
+		}
+	}
+
+	// Graph hooks, called by the stdlib whenever the body graph changes
+
+	void addBody(RainInstance body) {
+		body.setField("__history", new HistoryColumn(history, history.open()));
+		int label = nextComponent++;
+		List<RainInstance> list = new ArrayList<>();
+		list.add(body);
+		component.put(body, label);
+		members.put(label, list);
+		layout = null;
+	}
+
+	void removeBody(RainInstance body) {
+		release(body);
+		rain.remove(body);
+		rules.removeIf(r -> r.body == body);
+		Integer label = component.remove(body);
+		if (label != null) members.get(label).remove(body);
+		// Its neighbours may have split apart, relabel lazily
+		labelsStale = true;
+		layout = null;
+	}
+
+	void connected(RainInstance start, RainInstance outflow) {
+		layout = null;
+		if (labelsStale) return;
+		Integer a = component.get(start);
+		Integer b = component.get(outflow);
+		if (a == null || b == null || a.equals(b)) return;
+
+		// Relabel the smaller side
+		List<RainInstance> big = members.get(a);
+		List<RainInstance> small = members.get(b);
+		int keep = a;
+		int drop = b;
+		if (small.size() > big.size()) {
+			List<RainInstance> t = big; big = small; small = t;
+			keep = b;
+			drop = a;
+		}
+		for (RainInstance r : small) component.put(r, keep);
+		big.addAll(small);
+		members.remove(drop);
+	}
+
+	void disconnected(RainInstance start, RainInstance outflow) {
+		layout = null;
+		if (labelsStale) return;
+		Integer label = component.get(start);
+		if (label == null || !label.equals(component.get(outflow))) return;
+
+		// Search outwards from both ends at once, the first side to run dry is a new component
+		Set<RainInstance> seenA = Collections.newSetFromMap(new IdentityHashMap<>());
+		Set<RainInstance> seenB = Collections.newSetFromMap(new IdentityHashMap<>());
+		ArrayDeque<RainInstance> qa = new ArrayDeque<>();
+		ArrayDeque<RainInstance> qb = new ArrayDeque<>();
+		seenA.add(start); qa.add(start);
+		seenB.add(outflow); qb.add(outflow);
+
+		Set<RainInstance> split = null;
+		while (split == null) {
+			if (qa.isEmpty()) { split = seenA; break; }
+			if (expand(qa, seenA, seenB)) return;
+			if (qb.isEmpty()) { split = seenB; break; }
+			if (expand(qb, seenB, seenA)) return;
+		}
+
+		int fresh = nextComponent++;
+		List<RainInstance> moved = new ArrayList<>(split.size());
+		for (RainInstance r : members.get(label)) {
+			if (split.contains(r)) {
+				component.put(r, fresh);
+				moved.add(r);
+			}
+		}
+		members.get(label).removeIf(split::contains);
+		members.put(fresh, moved);
+	}
+
+	// Visit one body's neighbours, true if the other search has already been there
+	private boolean expand(ArrayDeque<RainInstance> queue, Set<RainInstance> seen, Set<RainInstance> other) {
+		RainInstance cur = queue.poll();
+		for (String dir : new String[] { "outflows", "inflows" }) {
+			for (Object o : list(cur.getField(dir))) {
+				RainInstance n = (RainInstance) o;
+				if (other.contains(n)) return true;
+				if (seen.add(n)) queue.add(n);
+			}
+		}
+		return false;
+	}
+
+	// Full relabel by undirected BFS, only needed after bodies are removed
+	private void relabel(List<Object> registry) {
+		component.clear();
+		members.clear();
+		for (Object o : registry) {
+			RainInstance root = (RainInstance) o;
+			if (component.containsKey(root)) continue;
+			int label = nextComponent++;
+			List<RainInstance> list = new ArrayList<>();
+			ArrayDeque<RainInstance> queue = new ArrayDeque<>();
+			component.put(root, label);
+			queue.add(root);
+			while (!queue.isEmpty()) {
+				RainInstance cur = queue.poll();
+				list.add(cur);
+				for (String dir : new String[] { "outflows", "inflows" }) {
+					for (Object n : list(cur.getField(dir))) {
+						if (component.putIfAbsent((RainInstance) n, label) == null) queue.add((RainInstance) n);
+					}
+				}
+			}
+			members.put(label, list);
+		}
+		labelsStale = false;
+	}
+
+	// Bodies in the order a layout would hold them. Kahn over the open edges of the whole registry,
+	// restricted to one component this is exactly the order Kahn would produce for that component
+	// alone, so per-component stepping matches a global pass. A closed edge carries no water and
+	// doesn't order its ends, as if the dam had disconnected it.
+	private RainInstance[] arrange(List<Object> registry) {
+		// Bodies we were never told about (e.g. in a forked interpreter) need a full relabel
+		for (Object o : registry) {
+			if (!component.containsKey(o)) labelsStale = true;
+		}
+		if (labelsStale) relabel(registry);
+		int n = registry.size();
+
+		Map<RainInstance, Integer> regIndex = new IdentityHashMap<>();
+		for (int i = 0; i < n; i++) regIndex.put((RainInstance) registry.get(i), i);
+		int[] indeg = new int[n];
+		for (int i = 0; i < n; i++) {
+			RainInstance b = (RainInstance) registry.get(i);
+			List<Object> outflows = list(b.getField("outflows"));
+			List<Object> gates = list(b.getField("outflow_open"));
+			for (int e = 0; e < outflows.size(); e++) {
+				Integer j = regIndex.get(outflows.get(e));
+				if (j != null && (Boolean) gates.get(e)) indeg[j]++;
+			}
+		}
+		int[] order = new int[n];
+		int tail = 0;
+		for (int i = 0; i < n; i++) if (indeg[i] == 0) order[tail++] = i;
+		for (int head = 0; head < tail; head++) {
+			RainInstance b = (RainInstance) registry.get(order[head]);
+			List<Object> outflows = list(b.getField("outflows"));
+			List<Object> gates = list(b.getField("outflow_open"));
+			for (int e = 0; e < outflows.size(); e++) {
+				Integer j = regIndex.get(outflows.get(e));
+				if (j != null && (Boolean) gates.get(e) && --indeg[j] == 0) order[tail++] = j;
+			}
+		}
+		if (tail != n) throw new RainRuntimeError(site, "Assertion failed: graph must be a DAG");
+
+		// Stable partition of the topological order by component, components in order of first appearance
+		Map<Integer, List<RainInstance>> byComponent = new LinkedHashMap<>();
+		for (int i = 0; i < n; i++) {
+			RainInstance b = (RainInstance) registry.get(order[i]);
+			byComponent.computeIfAbsent(component.get(b), k -> new ArrayList<>()).add(b);
+		}
+		RainInstance[] bodies = new RainInstance[n];
+		int at = 0;
+		for (List<RainInstance> comp : byComponent.values()) {
+			for (RainInstance b : comp) bodies[at++] = b;
+		}
+		return bodies;
+	}
+
+	private Layout buildLayout(List<Object> registry) {
+		RainInstance[] bodies = arrange(registry);
+		int n = bodies.length;
+		Map<RainInstance, Integer> index = new IdentityHashMap<>();
+		List<Integer> starts = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			index.put(bodies[i], i);
+			if (i == 0 || !component.get(bodies[i]).equals(component.get(bodies[i - 1]))) starts.add(i);
+		}
+		starts.add(n);
+		int[] componentStart = starts.stream().mapToInt(Integer::intValue).toArray();
+
+		int[] edgeStart = new int[n + 1];
+		List<Integer> children = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			edgeStart[i] = children.size();
+			for (Object o : list(bodies[i].getField("outflows"))) {
+				Integer j = index.get(o);
+				// Edges to unregistered bodies keep their slot so rates stay aligned, they are skipped when stepping
+				children.add(j == null ? -1 : j);
+			}
+		}
+		edgeStart[n] = children.size();
+		int[] edgeChild = new int[children.size()];
+		for (int i = 0; i < edgeChild.length; i++) edgeChild[i] = children.get(i);
+
+		return new Layout(bodies, index, componentStart, edgeStart, edgeChild, batch(componentStart));
+	}
+
+	// Longest-processing-time assignment of components to one batch per worker
+	private static int[][] batch(int[] componentStart) {
+		int components = componentStart.length - 1;
+		int workers = Math.min(components, ForkJoinPool.getCommonPoolParallelism() + 1);
+		if (workers <= 1) {
+			int[] all = new int[components];
+			for (int i = 0; i < components; i++) all[i] = i;
+			return new int[][] { all };
+		}
+		Integer[] bySize = new Integer[components];
+		for (int i = 0; i < components; i++) bySize[i] = i;
+		Arrays.sort(bySize, (x, y) -> Integer.compare(
+			componentStart[y + 1] - componentStart[y], componentStart[x + 1] - componentStart[x]));
+
+		List<List<Integer>> batches = new ArrayList<>();
+		long[] load = new long[workers];
+		for (int w = 0; w < workers; w++) batches.add(new ArrayList<>());
+		for (int comp : bySize) {
+			int lightest = 0;
+			for (int w = 1; w < workers; w++) if (load[w] < load[lightest]) lightest = w;
+			batches.get(lightest).add(comp);
+			load[lightest] += componentStart[comp + 1] - componentStart[comp];
+		}
+		int[][] out = new int[workers][];
+		for (int w = 0; w < workers; w++) {
+			out[w] = batches.get(w).stream().mapToInt(Integer::intValue).toArray();
+		}
+		return out;
+	}
+
+	// simulate(days): sources, rain, propagation and sinks per day, then history snapshot.
+	// Scheduled calls and rules are checked before every day. When one fires the state is written back for its action,
+	// and the run then picks up whatever the action changed, like a script between simulate() calls.
+	void run(Token paren, double days) {
+		if (firing) throw new RainRuntimeError(paren, "simulate() cannot be called from a when() or at_day() action.");
+		site = paren;
+		long began = System.nanoTime();
+		RainEvents.Simulate event = RainEvents.recording() ? new RainEvents.Simulate() : null;
+		long first = (long) num(interpreter.globals.getLocal("__DAY"));
+		SimStats s = new SimStats();
+		s.calls = 1;
+		s.rainSchedules = rain.size();
+		last = s;
+		long left = days > 0 ? (long) Math.ceil(days) : 0;
+		boolean checked = false;
+		boolean started = false;
+		while (true) {
+			double day = num(interpreter.globals.getLocal("__DAY"));
+			long t = System.nanoTime();
+			Layout L = prepare();
+			s.prepare += System.nanoTime() - t;
+			s.bodies = L.bodies.length;
+			s.edges = L.edgeChild.length;
+			s.components = L.componentCount();
+			// Before the first day, and before day 0 is recorded so it includes what the actions did
+			if (!checked) {
+				checked = true;
+				if (left > 0 && fire(L, day)) continue;
+			}
+			if (!started && day == 0) snapshot(L);
+			started = true;
+			boolean fired = false;
+
+			boolean parallel = L.batches.length > 1 && L.bodies.length >= PARALLEL_MIN_BODIES;
+			List<java.util.concurrent.Callable<Void>> tasks = new ArrayList<>();
+			for (int w = 0; w < L.batches.length; w++) {
+				int[] batch = L.batches[w];
+				SimStats into = work[w];
+				Scratch buffers = scratch[w];
+				tasks.add(() -> {
+					step(L, batch, into, buffers);
+					return null;
+				});
+			}
+
+			// The last day changed nothing and had no rain, so every day up to the next rain repeats it
+			boolean still = false;
+			while (left > 0) {
+				interpreter.checkCancelled();
+				today = (long) day;
+				long skip = still ? Math.min(left, quietDays()) : 0;
+				if (skip > 0) {
+					RainEvents.SkippedDays skipped = RainEvents.recording() ? new RainEvents.SkippedDays() : null;
+					t = System.nanoTime();
+					appendRepeated(L, skip);
+					s.history += System.nanoTime() - t;
+					if (skipped != null && skipped.shouldCommit()) {
+						skipped.firstDay = today;
+						skipped.days = skip;
+						skipped.bodies = L.bodies.length;
+						skipped.commit();
+					}
+					s.skipped += skip;
+					s.days += skip;
+					day = day + skip;
+					left -= skip;
+				} else {
+					RainEvents.Day stepped = RainEvents.recording() ? new RainEvents.Day() : null;
+					long distributed = s.distributed;
+					t = System.nanoTime();
+					boolean dry = rainToday(L);
+					dryToday = dry;
+					s.rain += System.nanoTime() - t;
+					s.rainBodies += wetCount;
+					if (parallel) {
+						runAll(tasks);
+					} else {
+						for (int w = 0; w < L.batches.length; w++) step(L, L.batches[w], work[w], scratch[w]);
+					}
+					for (SimStats w : work) {
+						s.addStep(w);
+						w.clearStep();
+					}
+					t = System.nanoTime();
+					snapshot(L);
+					s.history += System.nanoTime() - t;
+					if (stepped != null && stepped.shouldCommit()) {
+						stepped.day = today;
+						stepped.bodies = L.bodies.length;
+						stepped.wetBodies = wetCount;
+						stepped.distributed = s.distributed - distributed;
+						stepped.commit();
+					}
+					s.days++;
+					still = dry && unchanged(L);
+					fullDay = false;
+					day = day + 1;
+					left--;
+				}
+				if (checkpointEvery > 0 && (long) day % checkpointEvery == 0) checkpoint(L, day);
+				if (left > 0 && fire(L, day)) {
+					fired = true;
+					break;
+				}
+			}
+			if (fired) continue;
+
+			t = System.nanoTime();
+			store(L);
+			// Only a run that stepped a full day has built an active set to carry
+			carried = fullDay ? null : L;
+			long next = (long) day;
+			rain.values().removeIf(r -> r.expiredBy(next));
+			for (RainSchedule r : rain.values()) r.trim(next);
+			interpreter.globals.define("__DAY", new NumericValue(Type.val(), day));
+			s.cleanup += System.nanoTime() - t;
+			s.total = System.nanoTime() - began;
+			total.add(s);
+			if (event != null && event.shouldCommit()) {
+				event.firstDay = first;
+				event.days = s.days;
+				event.skippedDays = s.skipped;
+				event.bodies = (int) s.bodies;
+				event.components = (int) s.components;
+				event.actions = s.actions;
+				event.commit();
+			}
+			return;
+		}
+	}
+
+	// Lay out and load the bodies and build today's views of rain, sources, sinks and rules
+	private Layout prepare() {
+		List<Object> registry = list(interpreter.globals.getLocal("__BODY_REGISTRY"));
+		if (layout != null && layout.bodies.length == registry.size() && layout.gatesMoved()) {
+			// Gates order the bodies, keep the layout only if the order still holds
+			RainInstance[] bodies = arrange(registry);
+			if (Arrays.equals(bodies, layout.bodies)) {
+				layout.takeGates();
+			} else {
+				layout = null;
+			}
+		}
+		if (layout == null || layout.bodies.length != registry.size()) {
+			layout = buildLayout(registry);
+			last.layouts++;
+		}
+		Layout L = layout;
+		if (work.length != L.batches.length) {
+			work = new SimStats[L.batches.length];
+			scratch = new Scratch[L.batches.length];
+			for (int w = 0; w < work.length; w++) {
+				work[w] = new SimStats();
+				scratch[w] = new Scratch();
+			}
+		}
+		// Without a valid active set from the last run, the first day steps everything
+		fullDay = carried != L;
+		carried = null;
+		if (fullDay) resetActive(L);
+		load(L, !fullDay);
+
+		// Bodies with rain still to come, grouped by component
+		if (schedule.length != L.bodies.length) schedule = new RainSchedule[L.bodies.length];
+		Arrays.fill(schedule, null);
+		for (Map.Entry<RainInstance, RainSchedule> e : rain.entrySet()) {
+			Integer b = L.index.get(e.getKey());
+			if (b != null) schedule[b] = e.getValue();
+		}
+		wetDay = new long[L.componentCount()];
+		wetFrom = new int[L.componentCount()];
+		wetTo = new int[L.componentCount()];
+		Arrays.fill(wetDay, Long.MIN_VALUE);
+		sourced = new int[L.componentCount()][];
+		drained = new int[L.componentCount()][];
+		for (int c = 0; c < L.componentCount(); c++) {
+			int from = L.componentStart[c];
+			int[] src = new int[L.componentStart[c + 1] - from];
+			int[] drain = new int[src.length];
+			int ns = 0, nd = 0;
+			for (int i = from; i < L.componentStart[c + 1]; i++) {
+				if (sources[i] != 0) src[ns++] = i;
+				// Rain, negative sources or a script can leave a body below zero for the sink phase to clamp
+				if (sinks[i] != 0 || sources[i] < 0 || schedule[i] != null || volume[i] < 0) drain[nd++] = i;
+			}
+			sourced[c] = Arrays.copyOf(src, ns);
+			drained[c] = Arrays.copyOf(drain, nd);
+		}
+
+		rulePos = new int[rules.size()];
+		for (int k = 0; k < rulePos.length; k++) {
+			Integer b = L.index.get(rules.get(k).body);
+			rulePos[k] = b == null ? -1 : b;
+		}
+		return L;
+	}
+
+	// Run the at_day() calls due by 'day' and check every rule against the state at its start,
+	// true if any action ran
+	private boolean fire(Layout L, double day) {
+		long t = System.nanoTime();
+		try {
+			return fireDue(L, day);
+		} finally {
+			last.rules += System.nanoTime() - t;
+		}
+	}
+
+	private boolean fireDue(Layout L, double day) {
+		boolean any = calls.next(Long.MIN_VALUE) <= (long) day;
+		for (int k = 0; k < rulePos.length && !any; k++) {
+			if (rulePos[k] >= 0) any = rules.get(k).fires(volume[rulePos[k]]);
+		}
+		if (!any) {
+			for (int k = 0; k < rulePos.length; k++) {
+				if (rulePos[k] >= 0) rules.get(k).last = rules.get(k).holds(volume[rulePos[k]]);
+			}
+			return false;
+		}
+
+		// Hand the state back to the script. Scheduled calls go first, rules are then taken in order
+		// against the script's view, so each sees what earlier actions did.
+		store(L);
+		carried = fullDay ? null : L;
+		interpreter.globals.define("__DAY", new NumericValue(Type.val(), day));
+		int[] pos = rulePos;
+		List<Rule> current = new ArrayList<>(rules.subList(0, pos.length));
+		firing = true;
+		try {
+			List<RainFunction> timed = new ArrayList<>();
+			calls.take((long) day, timed);
+			for (RainFunction fn : timed) {
+				last.actions++;
+				fn.call(interpreter, site, List.of());
+			}
+			for (int k = 0; k < pos.length; k++) {
+				Rule r = current.get(k);
+				// Skip bodies that are not simulated, or were removed by an earlier action
+				if (pos[k] < 0 || !rules.contains(r)) continue;
+				double v = num(r.body.getField("volume"));
+				boolean fires = r.fires(v);
+				r.last = r.holds(v);
+				if (fires) {
+					last.actions++;
+					r.action.call(interpreter, site, List.of());
+				}
+			}
+		} finally {
+			firing = false;
+		}
+		return true;
+	}
+
+	// Take today's rain off the calendar and group it by component, true if no rain falls anywhere
+	private boolean rainToday(Layout L) {
+		due.clear();
+		rainDays.take(today, due);
+		if (wetToday.length < due.size()) wetToday = new int[Math.max(due.size(), 2 * wetToday.length)];
+		int n = 0;
+		for (RainInstance b : due) {
+			Integer i = L.index.get(b);
+			if (i != null && schedule[i] != null) wetToday[n++] = i;
+		}
+		// Overlapping storms list a body more than once
+		Arrays.sort(wetToday, 0, n);
+		boolean dry = true;
+		int m = 0;
+		for (int k = 0; k < n; k++) {
+			int i = wetToday[k];
+			if (m > 0 && wetToday[m - 1] == i) continue;
+			wetToday[m] = i;
+			int c = L.componentOf[i];
+			if (wetDay[c] != today) {
+				wetDay[c] = today;
+				wetFrom[c] = m;
+			}
+			wetTo[c] = ++m;
+			if (schedule[i].at(today) != 0) dry = false;
+		}
+		wetCount = m;
+		return dry;
+	}
+
+	// Bit for bit the same volumes as before today's step. Water that moved can still net out, as when
+	// sources match sinks, so components where something moved are compared body by body.
+	private boolean unchanged(Layout L) {
+		for (int c = 0; c < changed.length; c++) {
+			if (!changed[c]) continue;
+			for (int i = L.componentStart[c]; i < L.componentStart[c + 1]; i++) {
+				if (Double.doubleToRawLongBits(volume[i]) != Double.doubleToRawLongBits(before[i])) return false;
+			}
+		}
+		return true;
+	}
+
+	// Days from today that can be skipped: until the next rain or at_day() call, or the next checkpoint
+	// so it is still written
+	private long quietDays() {
+		long until = Math.min(rainDays.next(today), calls.next(today));
+		long quiet = until - today;
+		if (checkpointEvery > 0) quiet = Math.min(quiet, checkpointEvery - today % checkpointEvery);
+		return quiet;
+	}
+
+	private void appendRepeated(Layout L, long times) {
+		try {
+			history.appendRepeated(slot, volume, L.bodies.length, times);
+		} catch (UncheckedIOException e) {
+			throw new RainRuntimeError(site, e.getMessage());
+		}
+	}
+
+	// Write the state as of the end of this day, the run then carries on from the same arrays
+	private void checkpoint(Layout L, double day) {
+		store(L);
+		interpreter.globals.define("__DAY", new NumericValue(Type.val(), day));
+		try {
+			Checkpoint.write(interpreter, checkpointPath);
+		} catch (IOException e) {
+			throw new RainRuntimeError(site, "Failed to write checkpoint '" + checkpointPath + "': " + e.getMessage());
+		}
+	}
+
+	private void runAll(List<java.util.concurrent.Callable<Void>> tasks) {
+		try {
+			for (Future<Void> f : ForkJoinPool.commonPool().invokeAll(tasks)) f.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException r) throw r;
+			if (cause instanceof Error err) throw err;
+			throw new RainRuntimeError(site, "Simulation worker failed: " + cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RainRuntimeError(site, "Simulation interrupted.");
+		}
+	}
+
+	// With carry, the arrays still hold the state the last run stored, anything a script changed since
+	// then is put in the active set
+	private void load(Layout L, boolean carry) {
+		int n = L.bodies.length;
+		if (volume.length != n) {
+			volume = new double[n];
+			sources = new double[n];
+			sinks = new double[n];
+			area = new double[n];
+			slot = new int[n];
+		}
+		if (rate.length != L.edgeChild.length) {
+			rate = new double[L.edgeChild.length];
+			open = new boolean[L.edgeChild.length];
+		}
+		for (int i = 0; i < n; i++) {
+			RainInstance b = L.bodies[i];
+			boolean same = true;
+			same &= reload(volume, i, b.getField("volume"));
+			same &= reload(sources, i, b.getField("sources"));
+			same &= reload(sinks, i, b.getField("sinks"));
+			same &= reload(area, i, b.getField("area"));
+			slot[i] = history(b).slot;
+			List<Object> rates = list(b.getField("outflow_rates"));
+			List<Object> gates = list(b.getField("outflow_open"));
+			for (int e = L.edgeStart[i]; e < L.edgeStart[i + 1]; e++) {
+				same &= reload(rate, e, rates.get(e - L.edgeStart[i]));
+				boolean g = (Boolean) gates.get(e - L.edgeStart[i]);
+				same &= open[e] == g;
+				open[e] = g;
+			}
+			if (carry && !same) {
+				int c = L.componentOf[i];
+				markLater(L, c, i);
+				for (int k = L.inStart[i]; k < L.inStart[i + 1]; k++) markLater(L, c, L.inParent[k]);
+			}
+		}
+	}
+
+	// Load one value, true if it is what the array already held
+	private static boolean reload(double[] into, int i, Object value) {
+		double v = num(value);
+		boolean same = Double.doubleToRawLongBits(into[i]) == Double.doubleToRawLongBits(v);
+		into[i] = v;
+		return same;
+	}
+
+	private void resetActive(Layout L) {
+		int n = L.bodies.length;
+		int components = L.componentCount();
+		queued = new boolean[n];
+		pending = new boolean[n];
+		active = new int[n];
+		later = new int[n];
+		moved = new int[n];
+		activeSize = new int[components];
+		laterSize = new int[components];
+		changed = new boolean[components];
+		before = new double[n];
+	}
+
+	private void store(Layout L) {
+		for (int i = 0; i < L.bodies.length; i++) {
+			L.bodies[i].setField("volume", new NumericValue(Type.volume(), volume[i]));
+		}
+	}
+
+	private void snapshot(Layout L) {
+		try {
+			history.append(slot, volume, L.bodies.length);
+		} catch (UncheckedIOException e) {
+			throw new RainRuntimeError(site, e.getMessage());
+		}
+	}
+
+	// The body records no more days
+	private void release(RainInstance body) {
+		if (body.getField("__history") instanceof HistoryColumn column && column.store == history) history.release(column.slot);
+	}
+
+	// A body's history column, adopting anything a script assigned to __history
+	private HistoryColumn history(RainInstance body) {
+		Object h = body.getField("__history");
+		if (h instanceof HistoryColumn column && column.store == history) return column;
+		List<Object> values = list(h);
+		double[] copy = new double[values.size()];
+		for (int i = 0; i < copy.length; i++) copy[i] = num(values.get(i));
+		HistoryColumn column = historyColumn(copy);
+		body.setField("__history", column);
+		return column;
+	}
+
+	// Step a batch of components through today's phases. Components are independent, so each phase
+	// runs over the whole batch before the next and is timed once.
+	private void step(Layout L, int[] batch, SimStats s, Scratch buffers) {
+		long t0 = System.nanoTime();
+		for (int c : batch) stepSources(L, c);
+		long t1 = System.nanoTime();
+		for (int c : batch) stepRain(L, c);
+		long t2 = System.nanoTime();
+		for (int c : batch) stepPropagation(L, c, s, buffers);
+		long t3 = System.nanoTime();
+		for (int c : batch) stepSinks(L, c);
+		long t4 = System.nanoTime();
+		s.sources += t1 - t0;
+		s.rain += t2 - t1;
+		s.propagation += t3 - t2;
+		s.sinks += t4 - t3;
+	}
+
+	// Start the day's active set, then 1) sources
+	private void stepSources(Layout L, int c) {
+		int from = L.componentStart[c];
+		int to = L.componentStart[c + 1];
+		changed[c] = false;
+		if (dryToday) System.arraycopy(volume, from, before, from, to - from);
+		if (fullDay) {
+			// Positions in order already form a heap
+			activeSize[c] = to - from;
+			for (int i = from; i < to; i++) {
+				active[i] = i;
+				queued[i] = true;
+			}
+		}
+		for (int k = 0; k < laterSize[c]; k++) {
+			int i = later[from + k];
+			pending[i] = false;
+			push(L, c, i);
+		}
+		laterSize[c] = 0;
+
+		// 1) Sources
+		int m = fullDay
+			? PHASES.add(volume, sources, from, to, moved, from)
+			: PHASES.add(volume, sources, sourced[c], sourced[c].length, moved, from);
+		for (int k = from; k < from + m; k++) added(L, c, moved[k] < 0 ? ~moved[k] : moved[k], moved[k] < 0);
+	}
+
+	// 2) Rain
+	private void stepRain(Layout L, int c) {
+		if (wetDay[c] == today) {
+			for (int k = wetFrom[c]; k < wetTo[c]; k++) add(L, c, wetToday[k], schedule[wetToday[k]].at(today));
+		}
+	}
+
+	// 3) Wavefront: topological cascade over the active bodies
+	private void stepPropagation(Layout L, int c, SimStats s, Scratch buffers) {
+		long distributed = 0, visited = 0, equalisations = 0;
+		while (activeSize[c] > 0) {
+			int p = pop(L, c);
+			queued[p] = false;
+			distributed++;
+			visited += L.edgeStart[p + 1] - L.edgeStart[p];
+			equalisations += distribute(L, c, p, buffers);
+		}
+		assert settled(L, c) : "Active set missed a body in component " + c;
+		s.distributed += distributed;
+		s.visited += visited;
+		s.equalisations += equalisations;
+	}
+
+	// 4) Sinks
+	private void stepSinks(Layout L, int c) {
+		int from = L.componentStart[c];
+		int to = L.componentStart[c + 1];
+		int m = fullDay
+			? PHASES.drain(volume, sinks, from, to, moved, from)
+			: PHASES.drain(volume, sinks, drained[c], drained[c].length, moved, from);
+		for (int k = from; k < from + m; k++) {
+			changed[c] = true;
+			if (moved[k] < 0) {
+				int i = ~moved[k];
+				for (int j = L.inStart[i]; j < L.inStart[i + 1]; j++) markLater(L, c, L.inParent[j]);
+			}
+		}
+	}
+
+	// Rain, before any distribution today
+	private void add(Layout L, int c, int i, double amount) {
+		double old = volume[i];
+		volume[i] = volume[i] + amount;
+		if (Double.doubleToRawLongBits(old) == Double.doubleToRawLongBits(volume[i])) return;
+		added(L, c, i, volume[i] < old);
+	}
+
+	// Sources or rain changed a body's volume
+	private void added(Layout L, int c, int i, boolean fell) {
+		changed[c] = true;
+		push(L, c, i);
+		// A lower body can draw water from parents that had settled against it
+		if (fell) {
+			for (int k = L.inStart[i]; k < L.inStart[i + 1]; k++) push(L, c, L.inParent[k]);
+		}
+	}
+
+	// Nothing in the component that was left out of the active set could have moved water
+	private boolean settled(Layout L, int c) {
+		for (int p = L.componentStart[c]; p < L.componentStart[c + 1]; p++) {
+			if (!pending[p] && canSend(L, p)) return false;
+		}
+		return true;
+	}
+
+	// Some open child is lower than the parent
+	private boolean canSend(Layout L, int p) {
+		if (!(volume[p] > 0)) return false;
+		double hp = div(volume[p], area[p]);
+		for (int e = L.edgeStart[p]; e < L.edgeStart[p + 1]; e++) {
+			int c = L.edgeChild[e];
+			if (c < 0 || rate[e] == 0 || !open[e]) continue;
+			if (div(volume[c], area[c]) < hp) return true;
+		}
+		return false;
+	}
+
+	// Into today's heap
+	private void push(Layout L, int c, int i) {
+		if (queued[i]) return;
+		queued[i] = true;
+		int base = L.componentStart[c];
+		int at = activeSize[c]++;
+		while (at > 0) {
+			int parent = (at - 1) / 2;
+			if (active[base + parent] <= i) break;
+			active[base + at] = active[base + parent];
+			at = parent;
+		}
+		active[base + at] = i;
+	}
+
+	private int pop(Layout L, int c) {
+		int base = L.componentStart[c];
+		int top = active[base];
+		int size = --activeSize[c];
+		int last = active[base + size];
+		int at = 0;
+		while (true) {
+			int l = 2 * at + 1;
+			if (l >= size) break;
+			int m = (l + 1 < size && active[base + l + 1] < active[base + l]) ? l + 1 : l;
+			if (active[base + m] >= last) break;
+			active[base + at] = active[base + m];
+			at = m;
+		}
+		active[base + at] = last;
+		return top;
+	}
+
+	// Onto tomorrow's list
+	private void markLater(Layout L, int c, int i) {
+		if (pending[i]) return;
+		pending[i] = true;
+		later[L.componentStart[c] + laterSize[c]++] = i;
+	}
+
+	// Distribute from a single parent to its children by repeatedly equalising with the currently lowest child.
+	// Children are kept in a min-heap on (head, edge order), which picks exactly the child the old full rescan
+	// picked each round. Untouched children keep their head, so only the equalised child is re-keyed,
+	// making a parent O(k log k) instead of O(k^2). tests/DistributeProperty.java checks it against the
+	// rescan. Returns how many equalisations it took.
+	private int distribute(Layout L, int comp, int p, Scratch buffers) {
+		int first = L.edgeStart[p];
+		int k = L.edgeStart[p + 1] - first;
+		if (k == 0 || volume[p] <= 0) return 0;
+
+		buffers.fit(k);
+		// Remaining per-edge caps for this day, negative means unlimited
+		double[] rem = buffers.rem;
+		double[] head = buffers.head;
+		int[] heap = buffers.heap;
+		int size = 0;
+
+		double hp = div(volume[p], area[p]);
+		for (int i = 0; i < k; i++) {
+			double r = rate[first + i];
+			rem[i] = r < 0 ? -1.0 : r;
+			int c = L.edgeChild[first + i];
+			if (rem[i] == 0 || c < 0 || !open[first + i]) continue;
+			head[i] = div(volume[c], area[c]);
+			// The parent only drains, a child at or above it now never becomes a candidate
+			if (head[i] < hp) heap[size++] = i;
+		}
+		for (int i = size / 2 - 1; i >= 0; i--) siftDown(heap, size, head, i);
+
+		boolean sent = false;
+		int rounds = 0;
+		while (volume[p] > 0 && size > 0) {
+			hp = div(volume[p], area[p]);
+			int best = heap[0];
+			if (!(head[best] < hp)) break;
+			heap[0] = heap[--size];
+			siftDown(heap, size, head, 0);
+
+			int child = L.edgeChild[first + best];
+			double cap = rem[best];
+			double moved = equalise(p, child, cap);
+			rounds++;
+			if (cap >= 0) rem[best] = rem[best] - moved;
+			if (moved <= 0) break;
+			sent = true;
+			// The child now holds more, it comes later in topological order so is still ahead today
+			push(L, comp, child);
+
+			// Rounding can leave the child a hair under the parent, let it compete again like the rescan would
+			if (rem[best] != 0) {
+				head[best] = div(volume[child], area[child]);
+				heap[size] = best;
+				siftUp(heap, size++, head);
+			}
+		}
+
+		if (sent) {
+			changed[comp] = true;
+			// The parent dropped, its own parents were stepped earlier today
+			for (int j = L.inStart[p]; j < L.inStart[p + 1]; j++) markLater(L, comp, L.inParent[j]);
+		}
+		// Caps ran out or rounding stopped it short, try again tomorrow
+		if (canSend(L, p)) markLater(L, comp, p);
+		return rounds;
+	}
+
+	private static final class Scratch {
+		double[] rem = new double[0];
+		double[] head = new double[0];
+		int[] heap = new int[0];
+
+		// Room for a parent with k children
+		void fit(int k) {
+			if (heap.length >= k) return;
+			rem = new double[k];
+			head = new double[k];
+			heap = new int[k];
+		}
+	}
+
+	// Lowest head first, ties go to the earlier edge
+	private static boolean lower(double[] head, int a, int b) {
+		return head[a] < head[b] || (head[a] == head[b] && a < b);
+	}
+
+	private static void siftDown(int[] heap, int size, double[] head, int i) {
+		while (true) {
+			int l = 2 * i + 1;
+			if (l >= size) return;
+			int m = (l + 1 < size && lower(head, heap[l + 1], heap[l])) ? l + 1 : l;
+			if (!lower(head, heap[m], heap[i])) return;
+			int t = heap[i]; heap[i] = heap[m]; heap[m] = t;
+			i = m;
+		}
+	}
+
+	private static void siftUp(int[] heap, int i, double[] head) {
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (!lower(head, heap[i], heap[parent])) return;
+			int t = heap[i]; heap[i] = heap[parent]; heap[parent] = t;
+			i = parent;
+		}
+	}
+
+	// Equalise a single parent->child pair w.r.t current heights; respect per-edge cap and parent availability.
+	// Returns how much was sent.
+	private double equalise(int p, int c, double edgeCap) {
+		if (volume[p] <= 0) return 0;
+
+		double hp = div(volume[p], area[p]);
+		double hc = div(volume[c], area[c]);
+		if (hp <= hc) return 0;
+
+		// Target common height if unconstrained
+		double hstar = div(hp * area[p] + hc * area[c], area[p] + area[c]);
+		double need = (hstar - hc) * area[c];
+		if (need < 0) need = 0;
+
+		double cap = edgeCap < 0 ? need : edgeCap;
+		double send = need;
+		if (send > cap) send = cap;
+		if (send > volume[p]) send = volume[p];
+
+		if (send > 0) {
+			volume[p] = volume[p] - send;
+			volume[c] = volume[c] + send;
+		}
+		return send;
+	}
+
+	private double div(double a, double b) {
+		if (b == 0) throw new RainRuntimeError(site, "Division by zero.");
+		return a / b;
+	}
+
+	private static double num(Object v) {
+		return ((NumericValue) v).value;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Object> list(Object v) {
+		return (List<Object>) v;
+	}
+}
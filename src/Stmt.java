@@ -1,6 +1,9 @@
 import java.util.List;
 
 abstract class Stmt {
+	// Line the statement starts on, set by the parser
+	int line;
+
 	interface Visitor<R> {
 		R visitExpressionStmt(Expression stmt);
 		R visitVarDeclStmt(VarDecl stmt);
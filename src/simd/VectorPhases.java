@@ -0,0 +1,103 @@
+import jdk.incubator.vector.*;
+
+// Day phases with the Vector API, only built and loaded where jdk.incubator.vector is available.
+// Lanes compute exactly what the scalar loop does, element by element in the same order of operations,
+// so results are bit-identical. A lane counts as changed when its bits differ, like the scalar check.
+final class VectorPhases extends Phases {
+	private static final VectorSpecies<Double> S = DoubleVector.SPECIES_PREFERRED;
+	private static final int LANES = S.length();
+
+	@Override
+	String name() {
+		return "vector (" + LANES + " lanes)";
+	}
+
+	@Override
+	int add(double[] volume, double[] amount, int from, int to, int[] moved, int at) {
+		int m = 0;
+		int i = from;
+		for (; i <= to - LANES; i += LANES) {
+			DoubleVector v = DoubleVector.fromArray(S, volume, i);
+			DoubleVector r = v.add(DoubleVector.fromArray(S, amount, i));
+			m += store(v, r, volume, i, null, 0, moved, at + m);
+		}
+		for (; i < to; i++) m += add(volume, amount, i, moved, at + m);
+		return m;
+	}
+
+	@Override
+	int add(double[] volume, double[] amount, int[] idx, int n, int[] moved, int at) {
+		int m = 0;
+		int k = 0;
+		for (; k <= n - LANES; k += LANES) {
+			DoubleVector v = DoubleVector.fromArray(S, volume, 0, idx, k);
+			DoubleVector r = v.add(DoubleVector.fromArray(S, amount, 0, idx, k));
+			m += store(v, r, volume, 0, idx, k, moved, at + m);
+		}
+		for (; k < n; k++) m += add(volume, amount, idx[k], moved, at + m);
+		return m;
+	}
+
+	@Override
+	int drain(double[] volume, double[] sinks, int from, int to, int[] moved, int at) {
+		int m = 0;
+		int i = from;
+		for (; i <= to - LANES; i += LANES) {
+			DoubleVector v = DoubleVector.fromArray(S, volume, i);
+			DoubleVector r = clamp(v.sub(DoubleVector.fromArray(S, sinks, i)));
+			m += store(v, r, volume, i, null, 0, moved, at + m);
+		}
+		for (; i < to; i++) m += drain(volume, sinks, i, moved, at + m);
+		return m;
+	}
+
+	@Override
+	int drain(double[] volume, double[] sinks, int[] idx, int n, int[] moved, int at) {
+		int m = 0;
+		int k = 0;
+		for (; k <= n - LANES; k += LANES) {
+			DoubleVector v = DoubleVector.fromArray(S, volume, 0, idx, k);
+			DoubleVector r = clamp(v.sub(DoubleVector.fromArray(S, sinks, 0, idx, k)));
+			m += store(v, r, volume, 0, idx, k, moved, at + m);
+		}
+		for (; k < n; k++) m += drain(volume, sinks, idx[k], moved, at + m);
+		return m;
+	}
+
+	@Override
+	void spread(double[] target, int at, double[] depths, double[] kernel, double area) {
+		for (int j = 0; j < depths.length; j++) {
+			double depth = depths[j];
+			int base = at + j;
+			int d = 0;
+			for (; d <= kernel.length - LANES; d += LANES) {
+				DoubleVector t = DoubleVector.fromArray(S, target, base + d);
+				DoubleVector k = DoubleVector.fromArray(S, kernel, d);
+				t.add(k.mul(depth).mul(area)).intoArray(target, base + d);
+			}
+			for (; d < kernel.length; d++) target[base + d] += kernel[d] * depth * area;
+		}
+	}
+
+	// Below zero becomes zero, NaN stays as it is
+	private static DoubleVector clamp(DoubleVector r) {
+		return r.blend(0.0, r.compare(VectorOperators.LT, 0.0));
+	}
+
+	// Write r back where it differs from v and list those lanes' positions, contiguous from i or idx[k ..]
+	private static int store(DoubleVector v, DoubleVector r, double[] volume, int i, int[] idx, int k, int[] moved, int at) {
+		long diff = v.reinterpretAsLongs().compare(VectorOperators.NE, r.reinterpretAsLongs()).toLong();
+		if (diff == 0) return 0;
+		if (idx == null) r.intoArray(volume, i);
+		else r.intoArray(volume, 0, idx, k);
+		long fell = r.compare(VectorOperators.LT, v).toLong();
+		int m = 0;
+		while (diff != 0) {
+			int lane = Long.numberOfTrailingZeros(diff);
+			int p = idx == null ? i + lane : idx[k + lane];
+			moved[at + m++] = (fell >>> lane & 1) != 0 ? ~p : p;
+			diff &= diff - 1;
+		}
+		return m;
+	}
+}
@@ -0,0 +1,158 @@
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+// Property test for the simulation's distribution step. Builds random stars, a parent with up to a
+// dozen children of random areas, volumes, flow caps and gates, steps them one day and checks every
+// volume, bit for bit, against the original full-rescan distribution below. A star is a component of
+// its own, so each day distributes every parent exactly once.
+//
+// java -cp build:build/tests DistributeProperty [rounds] [seed]
+public class DistributeProperty {
+	private static final int STARS = 200;
+	private static final int MAX_CHILDREN = 12;
+
+	public static void main(String[] args) {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+		SplittableRandom random = new SplittableRandom(seed);
+		int parents = 0;
+		for (int round = 0; round < rounds; round++) {
+			String failure = round(random);
+			if (failure != null) {
+				System.out.println("FAIL: " + failure + " (round " + round + ", seed " + seed + ")");
+				System.exit(1);
+			}
+			parents += STARS;
+		}
+		System.out.println("ok: " + parents + " parents matched the rescan");
+	}
+
+	// null if every star matched
+	private static String round(SplittableRandom random) {
+		StringBuilder script = new StringBuilder();
+		for (int s = 0; s < STARS; s++) {
+			script.append(body("p" + s, random));
+			int k = random.nextInt(MAX_CHILDREN + 1);
+			for (int i = 0; i < k; i++) {
+				String child = "c" + s + "_" + i;
+				// Some children tie with the one before, ties go to the earlier edge
+				if (i > 0 && random.nextInt(6) == 0) {
+					script.append("Body ").append(child).append(" = Body(\"").append(child).append("\", c").append(s).append('_').append(i - 1)
+						.append(".area, c").append(s).append('_').append(i - 1).append(".volume);\n");
+				} else {
+					script.append(body(child, random));
+				}
+				switch (random.nextInt(4)) {
+					case 0 -> script.append(String.format(Locale.ROOT, "connect(p%d, %s, %.3fML);%n", s, child, random.nextDouble(2)));
+					case 1 -> script.append(String.format(Locale.ROOT, "connect(p%d, %s, 0L);%n", s, child));
+					default -> script.append(String.format(Locale.ROOT, "connect(p%d, %s);%n", s, child));
+				}
+				if (random.nextInt(8) == 0) script.append(String.format(Locale.ROOT, "p%d.outflow_open[%d] = false;%n", s, i));
+			}
+		}
+
+		RainEngine engine = new RainEngine(OutputSink.stream(OutputStream.nullOutputStream(), StandardCharsets.UTF_8), ErrorReporter.STDERR);
+		if (!engine.run(script.toString(), "stars")) return "the generated script did not compile";
+		Interpreter interpreter = engine.interpreter();
+
+		// Expected volumes from the inputs as the engine holds them
+		double[][] expected = new double[STARS][];
+		for (int s = 0; s < STARS; s++) {
+			RainInstance p = (RainInstance) interpreter.globals.getLocal("p" + s);
+			List<Object> children = list(p.getField("outflows"));
+			List<Object> rates = list(p.getField("outflow_rates"));
+			List<Object> gates = list(p.getField("outflow_open"));
+			int k = children.size();
+			double[] v = new double[k + 1];
+			double[] a = new double[k + 1];
+			double[] caps = new double[k];
+			boolean[] live = new boolean[k];
+			v[0] = num(p.getField("volume"));
+			a[0] = num(p.getField("area"));
+			for (int i = 0; i < k; i++) {
+				RainInstance c = (RainInstance) children.get(i);
+				v[i + 1] = num(c.getField("volume"));
+				a[i + 1] = num(c.getField("area"));
+				caps[i] = num(rates.get(i));
+				live[i] = (Boolean) gates.get(i);
+			}
+			referenceDistribute(v, a, caps, live);
+			expected[s] = v;
+		}
+
+		engine.run("simulate(1);", "step");
+		if (engine.errorCount() > 0) return "simulate(1) failed";
+		for (int s = 0; s < STARS; s++) {
+			RainInstance p = (RainInstance) interpreter.globals.getLocal("p" + s);
+			List<Object> children = list(p.getField("outflows"));
+			if (Double.compare(num(p.getField("volume")), expected[s][0]) != 0) {
+				return "p" + s + " holds " + num(p.getField("volume")) + "L, the rescan leaves " + expected[s][0] + "L";
+			}
+			for (int i = 0; i < children.size(); i++) {
+				double got = num(((RainInstance) children.get(i)).getField("volume"));
+				if (Double.compare(got, expected[s][i + 1]) != 0) {
+					return "c" + s + "_" + i + " holds " + got + "L, the rescan leaves " + expected[s][i + 1] + "L";
+				}
+			}
+		}
+		return null;
+	}
+
+	private static String body(String name, SplittableRandom random) {
+		return String.format(Locale.ROOT, "Body %s = Body(\"%s\", %.4fkm2, %.3fML);%n",
+			name, name, 0.01 + random.nextDouble(5), random.nextInt(5) == 0 ? 0.0 : random.nextDouble(20));
+	}
+
+	// The original distribution over a parent (slot 0) and its children: equalise with the lowest open
+	// child that still has cap left, rescanning every child each round, until none is lower
+	static void referenceDistribute(double[] v, double[] a, double[] rates, boolean[] live) {
+		int k = rates.length;
+		double[] rem = new double[k];
+		for (int i = 0; i < k; i++) rem[i] = rates[i] < 0 ? -1.0 : rates[i];
+
+		while (v[0] > 0) {
+			double hp = v[0] / a[0];
+			int best = -1;
+			double bestH = 0;
+			for (int i = 0; i < k; i++) {
+				if (rem[i] == 0 || !live[i]) continue;
+				double hc = v[i + 1] / a[i + 1];
+				if (hc < hp && (best < 0 || hc < bestH)) {
+					best = i;
+					bestH = hc;
+				}
+			}
+			if (best < 0) break;
+
+			int c = best + 1;
+			double send = 0;
+			double php = v[0] / a[0];
+			double hc = v[c] / a[c];
+			if (php > hc) {
+				double hstar = (php * a[0] + hc * a[c]) / (a[0] + a[c]);
+				double need = (hstar - hc) * a[c];
+				if (need < 0) need = 0;
+				double cap = rem[best] < 0 ? need : rem[best];
+				send = need;
+				if (send > cap) send = cap;
+				if (send > v[0]) send = v[0];
+				if (send > 0) {
+					v[0] = v[0] - send;
+					v[c] = v[c] + send;
+				}
+			}
+			if (rem[best] >= 0) rem[best] = rem[best] - send;
+			if (send <= 0) break;
+		}
+	}
+
+	private static double num(Object v) {
+		return ((NumericValue) v).value;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Object> list(Object v) {
+		return (List<Object>) v;
+	}
+}
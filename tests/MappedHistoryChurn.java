@@ -0,0 +1,71 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+// Bodies come and go while a mapped history records them. Checks the file only grows by the slots
+// recording at the time, and that released slots still read back what they recorded, repeated
+// days included.
+//
+// java -cp build:build/tests MappedHistoryChurn [rounds] [seed]
+public class MappedHistoryChurn {
+	private static final int LIVE = 20;
+
+	public static void main(String[] args) throws IOException {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+		SplittableRandom random = new SplittableRandom(seed);
+		Path file = Files.createTempFile("rainlang-churn", ".bin");
+		try (MappedHistory history = new MappedHistory(file)) {
+			// What every slot opened so far should read back, by slot
+			List<List<Double>> expected = new ArrayList<>();
+			int[] live = new int[LIVE];
+			for (int i = 0; i < LIVE; i++) live[i] = open(history, expected);
+			double[] values = new double[LIVE];
+			long days = 0;
+			for (int round = 0; round < rounds; round++) {
+				// Replace a few bodies, as remove_body() and restore() do
+				for (int i = 0; i < LIVE; i++) {
+					if (random.nextInt(4) != 0) continue;
+					history.release(live[i]);
+					live[i] = open(history, expected);
+				}
+				long times = random.nextInt(3) == 0 ? 1 + random.nextInt(40) : 1;
+				for (int i = 0; i < LIVE; i++) {
+					values[i] = random.nextDouble(100);
+					for (long t = 0; t < times; t++) expected.get(live[i]).add(values[i]);
+				}
+				if (times == 1) {
+					history.append(live, values, LIVE);
+				} else {
+					history.appendRepeated(live, values, LIVE, times);
+				}
+				days += times;
+			}
+
+			for (int s = 0; s < expected.size(); s++) {
+				List<Double> want = expected.get(s);
+				if (history.length(s) != want.size()) fail("slot " + s + " holds " + history.length(s) + " days, not " + want.size(), seed);
+				for (int d = 0; d < want.size(); d++) {
+					if (history.read(s, d) != want.get(d)) fail("slot " + s + " day " + d + " reads " + history.read(s, d) + ", not " + want.get(d), seed);
+				}
+			}
+			// A released slot's lane goes to the next one, so each day costs at most LIVE doubles
+			long bytes = history.fileBytes();
+			if (bytes > days * LIVE * Double.BYTES) fail("wrote " + bytes + " bytes for " + days + " days of " + LIVE + " bodies", seed);
+			System.out.println("ok: " + expected.size() + " slots over " + days + " days read back");
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	private static int open(MappedHistory history, List<List<Double>> expected) {
+		int slot = history.open();
+		expected.add(new ArrayList<>());
+		return slot;
+	}
+
+	private static void fail(String message, long seed) {
+		System.out.println("FAIL: " + message + " (seed " + seed + ")");
+		System.exit(1);
+	}
+}
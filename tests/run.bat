@@ -0,0 +1,26 @@
+@echo off
+rem Regression scripts and property tests, run build.bat first. Scripts print FAIL: on a failed check.
+cd /d "%~dp0.."
+set failed=0
+for %%f in (tests\*.txt) do (
+	java -cp build RainLang %%f > "%TEMP%\rain-test.out" 2>&1
+	if errorlevel 1 (
+		echo FAIL %%f
+		set failed=1
+	) else (
+		findstr /c:"FAIL" "%TEMP%\rain-test.out" > nul && (echo FAIL %%f& set failed=1) || echo ok   %%f
+	)
+)
+rem Property tests, each a class with a main that exits non-zero on failure
+javac -cp build -d build\tests tests\*.java
+if errorlevel 1 exit /b 1
+for %%f in (tests\*.java) do (
+	java -cp build;build\tests %%~nf
+	if errorlevel 1 (
+		echo FAIL %%f
+		set failed=1
+	) else (
+		echo ok   %%f
+	)
+)
+exit /b %failed%
@@ -0,0 +1,27 @@
+#!/bin/bash
+# Regression scripts and property tests, run build.sh first. Scripts print FAIL: on a failed check.
+cd "$(dirname "$0")/.."
+failed=0
+for f in tests/*.txt; do
+	out=$(java -cp build RainLang "$f" 2>&1)
+	status=$?
+	if [ $status -ne 0 ] || grep -q "FAIL" <<< "$out"; then
+		echo "FAIL $f (exit $status)"
+		echo "$out" | grep -v "^Day\|^---" | head -20
+		failed=1
+	else
+		echo "ok   $f"
+	fi
+done
+# Property tests, each a class with a main that exits non-zero on failure
+javac -cp build -d build/tests tests/*.java || exit 1
+for f in tests/*.java; do
+	name=$(basename "$f" .java)
+	if java -cp build:build/tests "$name"; then
+		echo "ok   $f"
+	else
+		echo "FAIL $f"
+		failed=1
+	fi
+done
+exit $failed